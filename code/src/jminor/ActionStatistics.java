@@ -0,0 +1,192 @@
+package jminor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bgu.cs.util.treeGrammar.Node;
+
+/**
+ * Counts the shapes of the statements that appear in synthesized programs,
+ * e.g., 'v0 = v0.n' or 'v0 = v0 * v1', and keeps the counts in a file, so
+ * that they accumulate across runs. The shape of a statement is its text with
+ * the variables renamed by the order of their first appearance, so that
+ * statements of specifications from the same family share shapes.<br>
+ * The counts are used to order the statements of a transition relation, so
+ * that frequent statements are tried first, and to derive soft costs, which
+ * make frequent statements slightly cheaper than others. Since costs are never
+ * below 1, heuristics that bound the number of statements from below, such as
+ * {@link StoreDistanceHeuristic}, remain admissible.
+ *
+ * @author romanm
+ */
+public class ActionStatistics {
+	private final File file;
+
+	private final Map<String, Integer> counts = new HashMap<>();
+
+	/**
+	 * Constructs statistics from the counts in the given file. A missing or
+	 * unreadable file yields empty statistics, and malformed lines are ignored.
+	 */
+	public ActionStatistics(File file) {
+		this.file = file;
+		if (!file.exists()) {
+			return;
+		}
+		try (var in = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab < 0) {
+					continue;
+				}
+				try {
+					int count = Integer.parseInt(line.substring(0, tab));
+					if (count > 0) {
+						counts.merge(line.substring(tab + 1), count, Integer::sum);
+					}
+				} catch (NumberFormatException e) {
+					// Skip the malformed line.
+				}
+			}
+		} catch (IOException e) {
+			// Statistics are an optimization, so starting from scratch is not an
+			// error.
+			counts.clear();
+		}
+	}
+
+	/**
+	 * Returns the shape of the given statement.
+	 */
+	public static String shape(Node stmt) {
+		var result = new StringBuilder();
+		appendShape(stmt, new HashMap<>(), result);
+		return result.toString();
+	}
+
+	/**
+	 * Counts the atomic statements of the given statement.
+	 */
+	public void record(Node stmt) {
+		if (stmt instanceof SeqStmt) {
+			for (Node component : ((SeqStmt) stmt).getComponents()) {
+				record(component);
+			}
+		} else if (stmt instanceof IfStmt || stmt instanceof WhileStmt) {
+			for (Node arg : stmt.getArgs()) {
+				if (arg instanceof Stmt) {
+					record(arg);
+				}
+			}
+		} else if (stmt instanceof AssignStmt) {
+			counts.merge(shape(stmt), 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Returns the number of times statements with the shape of the given
+	 * statement were recorded.
+	 */
+	public int count(Node stmt) {
+		return counts.getOrDefault(shape(stmt), 0);
+	}
+
+	/**
+	 * Returns the given statements ordered by decreasing counts, where statements
+	 * with equal counts keep their relative order.
+	 */
+	public List<Stmt> order(Collection<Stmt> stmts) {
+		Map<Stmt, Integer> stmtCounts = new HashMap<>();
+		for (Stmt stmt : stmts) {
+			stmtCounts.put(stmt, count(stmt));
+		}
+		List<Stmt> result = new ArrayList<>(stmts);
+		result.sort(Comparator.comparing(stmtCounts::get, Comparator.reverseOrder()));
+		return result;
+	}
+
+	/**
+	 * Returns the costs of the given statements, which range from 1, for the
+	 * statements with the highest count, to 1 + penalty, for statements that
+	 * were never recorded.
+	 */
+	public Map<Stmt, Float> costs(Collection<Stmt> stmts, float penalty) {
+		assert penalty >= 0;
+		int maxCount = 0;
+		for (Stmt stmt : stmts) {
+			maxCount = Math.max(maxCount, count(stmt));
+		}
+		Map<Stmt, Float> result = new HashMap<>();
+		for (Stmt stmt : stmts) {
+			float rarity = maxCount == 0 ? 0 : 1 - (float) count(stmt) / maxCount;
+			result.put(stmt, 1 + penalty * rarity);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the counts to the file, most frequent shapes first.
+	 */
+	public void save() throws IOException {
+		List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+		entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+				.thenComparing(Map.Entry.comparingByKey()));
+		File parent = file.getAbsoluteFile().getParentFile();
+		parent.mkdirs();
+		// Write to a temporary file first, so that other runs never see partial
+		// statistics.
+		File tmpFile = File.createTempFile(file.getName(), ".tmp", parent);
+		try (var out = new PrintWriter(new FileWriter(tmpFile))) {
+			for (var entry : entries) {
+				out.println(entry.getValue() + "\t" + entry.getKey());
+			}
+		}
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new IOException("Unable to write " + file.getPath() + "!");
+		}
+	}
+
+	private static void appendShape(Node node, Map<Var, Integer> varIds, StringBuilder out) {
+		if (node instanceof AssignStmt) {
+			AssignStmt assign = (AssignStmt) node;
+			appendShape(assign.getLhs(), varIds, out);
+			out.append(" = ");
+			appendShape(assign.getRhs(), varIds, out);
+		} else if (node instanceof VarExpr) {
+			Var var = ((VarExpr) node).getVar();
+			Integer id = varIds.computeIfAbsent(var, v -> varIds.size());
+			out.append('v').append(id).append(':').append(var.getType().getName());
+		} else if (node instanceof DerefExpr) {
+			DerefExpr deref = (DerefExpr) node;
+			appendShape(deref.getLhs(), varIds, out);
+			out.append('.').append(deref.getField().name);
+		} else if (node instanceof IntBinOpExpr) {
+			IntBinOpExpr binOp = (IntBinOpExpr) node;
+			out.append('(');
+			appendShape(binOp.getLhs(), varIds, out);
+			out.append(' ').append(binOp.op).append(' ');
+			appendShape(binOp.getRhs(), varIds, out);
+			out.append(')');
+		} else if (node instanceof NewExpr) {
+			out.append("new ").append(((NewExpr) node).getType().getName());
+		} else if (node instanceof NullExpr) {
+			out.append("null");
+		} else if (node instanceof ValExpr) {
+			out.append(((ValExpr) node).getVal());
+		} else {
+			out.append(Renderer.render(node));
+		}
+	}
+}
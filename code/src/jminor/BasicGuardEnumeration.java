@@ -0,0 +1,125 @@
+package jminor;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import pexyn.guardInference.GuardEnumeration;
+
+/**
+ * The basic guards of a semantics, in non-decreasing order of cost: less-than
+ * and equality guards over pairs of integer expressions and over integer
+ * expressions and constants, followed by the other (Boolean and reference)
+ * guards of the same cost.<br>
+ * The costs of guards over integer expressions are sums of the costs of the
+ * expressions, which are computed once, so the guards of each cost level are
+ * constructed by scanning the pairs of expressions, without constructing the
+ * guards of other levels. Within a level, the guards are in the order in which
+ * the semantics used to generate them before sorting them by cost.
+ *
+ * @author romanm
+ */
+class BasicGuardEnumeration extends GuardEnumeration<BoolExpr> {
+	private final JminorSemantics semantics;
+
+	private final List<Expr> intExprs;
+
+	private final float[] intExprCosts;
+
+	private final List<IntVal> intVals;
+
+	private final List<BoolExpr> otherGuards;
+
+	private final float[] otherGuardCosts;
+
+	/**
+	 * The costs of the guards, in increasing order.
+	 */
+	private final float[] levels;
+
+	private int nextLevel = 0;
+
+	BasicGuardEnumeration(JminorSemantics semantics, List<Expr> intExprs, List<IntVal> intVals,
+			List<BoolExpr> otherGuards) {
+		super(countGuards(intExprs.size(), intVals.size(), otherGuards.size()));
+		this.semantics = semantics;
+		this.intExprs = intExprs;
+		this.intVals = intVals;
+		this.otherGuards = otherGuards;
+
+		var costs = new TreeSet<Float>();
+		intExprCosts = new float[intExprs.size()];
+		for (int i = 0; i < intExprCosts.length; ++i) {
+			intExprCosts[i] = semantics.exprCost(intExprs.get(i));
+		}
+		for (int i = 0; i < intExprCosts.length; ++i) {
+			for (int j = 0; j < intExprCosts.length; ++j) {
+				if (i != j) {
+					costs.add(intExprCosts[i] + intExprCosts[j] + 1);
+				}
+			}
+			if (!intVals.isEmpty()) {
+				costs.add(constantGuardCost(i));
+			}
+		}
+		otherGuardCosts = new float[otherGuards.size()];
+		for (int i = 0; i < otherGuardCosts.length; ++i) {
+			otherGuardCosts[i] = semantics.guardCost(otherGuards.get(i));
+			costs.add(otherGuardCosts[i]);
+		}
+		levels = new float[costs.size()];
+		int i = 0;
+		for (float cost : costs) {
+			levels[i++] = cost;
+		}
+	}
+
+	@Override
+	protected void generateNextLevel(List<BoolExpr> result) {
+		float level = levels[nextLevel++];
+		for (int i = 0; i < intExprs.size(); ++i) {
+			var e1 = intExprs.get(i);
+			for (int j = 0; j < intExprs.size(); ++j) {
+				if (i == j || intExprCosts[i] + intExprCosts[j] + 1 != level) {
+					continue;
+				}
+				var e2 = intExprs.get(j);
+				add(new LtExpr(e1, e2), level, result);
+				add(new LtExpr(e2, e1), level, result);
+				// Since equality is symmetric, prune out useless guards.
+				if (i < j) {
+					add(new EqExpr(e1, e2), level, result);
+				}
+			}
+			if (constantGuardCost(i) == level) {
+				for (var iv : intVals) {
+					add(new LtExpr(e1, new ValExpr(iv)), level, result);
+					add(new LtExpr(new ValExpr(iv), e1), level, result);
+					add(new EqExpr(e1, new ValExpr(iv)), level, result);
+				}
+			}
+		}
+		for (int i = 0; i < otherGuards.size(); ++i) {
+			if (otherGuardCosts[i] == level) {
+				result.add(otherGuards.get(i));
+			}
+		}
+	}
+
+	private void add(BoolExpr guard, float cost, List<BoolExpr> result) {
+		assert semantics.guardCost(guard) == cost;
+		result.add(guard);
+	}
+
+	/**
+	 * The cost of comparing the integer expression of the given index with a
+	 * constant.
+	 */
+	private float constantGuardCost(int intExpr) {
+		return intExprCosts[intExpr] + 1 + 1;
+	}
+
+	private static int countGuards(int numIntExprs, int numIntVals, int numOtherGuards) {
+		int pairs = numIntExprs * (numIntExprs - 1);
+		return 2 * pairs + pairs / 2 + 3 * numIntExprs * numIntVals + numOtherGuards;
+	}
+}
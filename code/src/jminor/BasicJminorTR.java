@@ -2,45 +2,401 @@ package jminor;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import pexyn.planning.TR;
+import bgu.cs.util.Pair;
+import bgu.cs.util.treeGrammar.Node;
+import jminor.JmStore.JmErrorStore;
+import pexyn.planning.InvertibleTR;
+import pexyn.planning.Transition;
 
 /**
- * A transition relation for basic (3-address code) statements.
+ * A transition relation for basic (3-address code) statements.<br>
+ * Partial stores are stores that bind only some of the variables and fields,
+ * e.g., goal stores. A store agrees with a partial store if it binds the same
+ * variables and fields to the same values (see
+ * {@link JminorSemantics#match(JmStore, JmStore)}).
  * 
  * @author romanm
  */
-public class BasicJminorTR implements TR<JmStore, Stmt> {
-	public static final BasicJminorTR applier = new BasicJminorTR(
-			JminorSemantics.fromVarsAndTypes(Collections.emptyList(), Collections.emptyList()));
-
+public class BasicJminorTR implements InvertibleTR<JmStore, Stmt> {
 	protected final JminorSemantics semantics;
 
+	/**
+	 * The statements of the relation, which are the statements of the semantics,
+	 * unless this relation is a view for a goal.
+	 */
+	protected Collection<Stmt> stmts;
+
+	/**
+	 * Whether the views for goals omit irrelevant statements.
+	 */
+	private boolean goalRelevancePruning = false;
+
+	/**
+	 * The costs of the statements, or null if all statements cost 1.
+	 */
+	private Map<Stmt, Float> costs = null;
+
 	public BasicJminorTR(JminorSemantics semantics) {
+		this(semantics, semantics.stmts);
+	}
+
+	protected BasicJminorTR(JminorSemantics semantics, Collection<Stmt> stmts) {
 		this.semantics = semantics;
+		this.stmts = stmts;
+	}
+
+	/**
+	 * Makes the views for goals omit the statements that cannot help to reach
+	 * the target (see {@link GoalRelevance}).
+	 */
+	public void setGoalRelevancePruning(boolean goalRelevancePruning) {
+		this.goalRelevancePruning = goalRelevancePruning;
+	}
+
+	/**
+	 * Orders the statements by decreasing frequency in previously synthesized
+	 * programs, and, if the given penalty is positive, makes each statement cost
+	 * between 1, for the most frequent statements, and 1 + penalty, for statements
+	 * that never appeared.
+	 */
+	public void setActionStatistics(ActionStatistics statistics, float costPenalty) {
+		stmts = statistics.order(stmts);
+		costs = costPenalty > 0 ? statistics.costs(stmts, costPenalty) : null;
+	}
+
+	@Override
+	public BasicJminorTR forGoal(JmStore target) {
+		if (!goalRelevancePruning) {
+			return this;
+		}
+		List<Stmt> relevant = GoalRelevance.relevantStmts(stmts, target);
+		if (relevant.size() == stmts.size()) {
+			return this;
+		}
+		var view = new BasicJminorTR(semantics, relevant);
+		view.costs = costs;
+		return view;
 	}
 
 	@Override
 	public Collection<Stmt> enabledActions(JmStore store) {
-		Collection<Stmt> result = new ArrayList<>(semantics.stmts.size());
-		for (var stmt : semantics.stmts) {
-			if (stmt.enabled(store)) {
+		Collection<Stmt> result = new ArrayList<>(stmts.size());
+		for (var stmt : stmts) {
+			if (!(run(stmt, store) instanceof JmErrorStore)) {
 				result.add(stmt);
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Interprets each statement once, keeping the resulting store unless the
+	 * execution ends in an error.
+	 */
+	@Override
+	public List<Transition<JmStore, Stmt>> successors(JmStore store) {
+		List<Transition<JmStore, Stmt>> result = new ArrayList<>(stmts.size());
+		for (var stmt : stmts) {
+			JmStore next = run(stmt, store);
+			if (!(next instanceof JmErrorStore)) {
+				result.add(new Transition<>(stmt, next, costOf(stmt)));
+			}
+		}
+		return result;
+	}
+
 	@Override
 	public float transitionCost(JmStore src, Stmt action, JmStore dst) {
-		return 1;
+		return costOf(action);
+	}
+
+	private float costOf(Stmt stmt) {
+		return costs == null ? 1 : costs.getOrDefault(stmt, 1f);
 	}
 
+	/**
+	 * Returns the store resulting from executing the given statement, or no store
+	 * if the execution ends in an error.
+	 */
 	@Override
 	public Collection<JmStore> apply(JmStore store, Stmt stmt) {
-		JmStore result = JminorInterpreter.v.run(stmt, store, JminorInterpreter.v.guessMaxSteps(stmt, store)).get();
+		JmStore result = run(stmt, store);
+		if (result instanceof JmErrorStore) {
+			return List.of();
+		}
 		return List.of(result);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Executes the compiled form of the given statement, which, unlike the
+	 * interpreter, has no mutable state, and therefore allows several threads to
+	 * search over the same transition relation.
+	 */
+	private static JmStore run(Stmt stmt, JmStore store) {
+		return JminorCompiler.compile(stmt).run(store);
+	}
+
+	@Override
+	public Collection<Stmt> actions() {
+		return stmts;
+	}
+
+	/**
+	 * Regresses assignments whose effect on the partial store can be undone:
+	 * assignments of null, constants, variables, and fields of bound objects, and
+	 * additions and subtractions of known values to/from the assigned variable.
+	 * Allocations, multiplications, divisions, and assignments that read variables
+	 * and fields that are not bound by the partial store are not regressed.
+	 */
+	@Override
+	public Collection<JmStore> regress(JmStore partial, Stmt stmt) {
+		if (!(stmt instanceof AssignStmt)) {
+			return List.of();
+		}
+		AssignStmt assign = (AssignStmt) stmt;
+
+		// Find the location updated by the statement and the value it holds
+		// after the statement.
+		Var lvar = null;
+		Obj lobj = null;
+		Field lfield = null;
+		Val written;
+		if (assign.getLhs() instanceof VarExpr) {
+			lvar = ((VarExpr) assign.getLhs()).getVar();
+			written = partial.eval(lvar);
+		} else {
+			DerefExpr lhsDeref = (DerefExpr) assign.getLhs();
+			Val base = valueOf(partial, lhsDeref.getLhs());
+			if (!(base instanceof Obj) || base == Obj.NULL) {
+				return List.of();
+			}
+			lobj = (Obj) base;
+			lfield = lhsDeref.getField();
+			written = partial.objects.contains(lobj) ? partial.eval(lobj, lfield) : null;
+		}
+		if (written == null) {
+			// The statement does not affect the partial store.
+			return List.of();
+		}
+
+		JmStore pre = new JmStore(new HashSet<>(partial.objects), partial.freeObjects, new HashMap<>(partial.env),
+				new HashMap<>(partial.heap));
+		if (lvar != null) {
+			pre.env.remove(lvar);
+		} else {
+			Map<Field, Val> fields = new HashMap<>(pre.heap.get(lobj));
+			fields.remove(lfield);
+			pre.heap.put(lobj, fields);
+		}
+
+		boolean consistent;
+		Node rhs = assign.getRhs();
+		if (rhs instanceof NullExpr || rhs instanceof ValExpr) {
+			consistent = written.equals(valueOf(pre, rhs));
+		} else if (rhs instanceof VarExpr) {
+			consistent = bind(pre, ((VarExpr) rhs).getVar(), written);
+		} else if (rhs instanceof DerefExpr) {
+			DerefExpr rhsDeref = (DerefExpr) rhs;
+			Val base = valueOf(pre, rhsDeref.getLhs());
+			consistent = base instanceof Obj && base != Obj.NULL && bind(pre, (Obj) base, rhsDeref.getField(), written);
+		} else if (rhs instanceof IntBinOpExpr && lvar != null) {
+			consistent = regressIntBinOp(pre, lvar, (IntBinOpExpr) rhs, (IntVal) written);
+		} else {
+			consistent = false;
+		}
+		return consistent ? List.of(pre) : List.of();
+	}
+
+	/**
+	 * Checks that every variable and field on which the store disagrees with the
+	 * partial store is assigned by a statement that {@link #regress} can undo, and
+	 * that the partial store has no objects that are yet to be allocated.
+	 */
+	@Override
+	public boolean regressible(JmStore store, JmStore partial) {
+		for (Map.Entry<Var, Val> entry : partial.env.entrySet()) {
+			if (!agrees(store.eval(entry.getKey()), entry.getValue()) && !regressibleWrite(entry.getKey())) {
+				return false;
+			}
+		}
+		for (Obj obj : partial.getObjects()) {
+			if (obj == Obj.NULL) {
+				continue;
+			} else if (!store.objects.contains(obj)) {
+				return false;
+			}
+			for (Map.Entry<Field, Val> entry : partial.geFields(obj).entrySet()) {
+				if (!agrees(store.eval(obj, entry.getKey()), entry.getValue()) && !regressibleWrite(entry.getKey())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean agrees(Val actual, Val expected) {
+		return actual != null && actual.equals(expected);
+	}
+
+	/**
+	 * Returns true if some statement assigns the given variable, or the given
+	 * field of some object, an expression that {@link #regress} can undo.
+	 */
+	private boolean regressibleWrite(Object location) {
+		for (Stmt stmt : stmts) {
+			if (!(stmt instanceof AssignStmt)) {
+				continue;
+			}
+			AssignStmt assign = (AssignStmt) stmt;
+			Node lhs = assign.getLhs();
+			boolean writes = lhs instanceof VarExpr ? ((VarExpr) lhs).getVar().equals(location)
+					: ((DerefExpr) lhs).getField().equals(location);
+			if (!writes) {
+				continue;
+			}
+			Node rhs = assign.getRhs();
+			if (rhs instanceof NullExpr || rhs instanceof ValExpr || rhs instanceof VarExpr
+					|| rhs instanceof DerefExpr) {
+				return true;
+			} else if (rhs instanceof IntBinOpExpr && lhs instanceof VarExpr) {
+				IntBinOp op = ((IntBinOpExpr) rhs).op;
+				if (op == IntBinOp.PLUS || op == IntBinOp.MINUS) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the set of variables and (object, field) pairs bound by the given
+	 * partial store.
+	 */
+	@Override
+	public Object domainOf(JmStore partial) {
+		Set<Object> result = new HashSet<>(partial.env.keySet());
+		for (Obj obj : partial.getObjects()) {
+			for (Field field : partial.geFields(obj).keySet()) {
+				result.add(new Pair<>(obj, field));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Object projectOnto(JmStore store, Object domain) {
+		@SuppressWarnings("unchecked")
+		Set<Object> locations = (Set<Object>) domain;
+		Map<Object, Val> result = new HashMap<>();
+		for (Object location : locations) {
+			Val val;
+			if (location instanceof Var) {
+				val = store.eval((Var) location);
+			} else {
+				@SuppressWarnings("unchecked")
+				Pair<Obj, Field> objField = (Pair<Obj, Field>) location;
+				val = store.eval(objField.first, objField.second);
+			}
+			if (val == null) {
+				return null;
+			}
+			result.put(location, val);
+		}
+		return result;
+	}
+
+	/**
+	 * Regresses 'lvar = e1 op e2' where one operand is 'lvar' and the other is
+	 * known, or neither operand is 'lvar' and both are known.
+	 */
+	private boolean regressIntBinOp(JmStore pre, Var lvar, IntBinOpExpr rhs, IntVal written) {
+		if (rhs.op != IntBinOp.PLUS && rhs.op != IntBinOp.MINUS) {
+			return false;
+		}
+		boolean lhsIsLvar = isVar(rhs.getLhs(), lvar);
+		boolean rhsIsLvar = isVar(rhs.getRhs(), lvar);
+		if (lhsIsLvar && rhsIsLvar) {
+			return false;
+		} else if (lhsIsLvar) {
+			Val other = valueOf(pre, rhs.getRhs());
+			if (!(other instanceof IntVal)) {
+				return false;
+			}
+			int k = ((IntVal) other).num;
+			// lvar = lvar + k or lvar = lvar - k
+			int old = rhs.op == IntBinOp.PLUS ? written.num - k : written.num + k;
+			return bind(pre, lvar, new IntVal(old));
+		} else if (rhsIsLvar) {
+			Val other = valueOf(pre, rhs.getLhs());
+			if (!(other instanceof IntVal)) {
+				return false;
+			}
+			int k = ((IntVal) other).num;
+			// lvar = k + lvar or lvar = k - lvar
+			int old = rhs.op == IntBinOp.PLUS ? written.num - k : k - written.num;
+			return bind(pre, lvar, new IntVal(old));
+		} else {
+			Val first = valueOf(pre, rhs.getLhs());
+			Val second = valueOf(pre, rhs.getRhs());
+			if (!(first instanceof IntVal) || !(second instanceof IntVal)) {
+				return false;
+			}
+			int l = ((IntVal) first).num;
+			int r = ((IntVal) second).num;
+			return written.num == (rhs.op == IntBinOp.PLUS ? l + r : l - r);
+		}
+	}
+
+	private static boolean isVar(Node expr, Var var) {
+		return expr instanceof VarExpr && ((VarExpr) expr).getVar().equals(var);
+	}
+
+	/**
+	 * Returns the value of a variable, null, or constant expression in the given
+	 * partial store, or null if it is unknown.
+	 */
+	private static Val valueOf(JmStore partial, Node expr) {
+		if (expr instanceof VarExpr) {
+			return partial.eval(((VarExpr) expr).getVar());
+		} else if (expr instanceof ValExpr) {
+			return ((ValExpr) expr).getVal();
+		} else if (expr instanceof NullExpr) {
+			return Obj.NULL;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Binds the given variable to the given value in the partial store, unless it
+	 * is bound to a different value, in which case false is returned.
+	 */
+	private static boolean bind(JmStore pre, Var var, Val val) {
+		Val current = pre.env.putIfAbsent(var, val);
+		return current == null || current.equals(val);
+	}
+
+	/**
+	 * Binds the given field of the given object to the given value in the partial
+	 * store, unless it is bound to a different value, in which case false is
+	 * returned.
+	 */
+	private static boolean bind(JmStore pre, Obj obj, Field field, Val val) {
+		pre.objects.add(obj);
+		Map<Field, Val> fields = pre.heap.get(obj);
+		Val current = fields != null ? fields.get(field) : null;
+		if (current != null) {
+			return current.equals(val);
+		}
+		fields = fields != null ? new HashMap<>(fields) : new HashMap<>();
+		fields.put(field, val);
+		pre.heap.put(obj, fields);
+		return true;
+	}
+}
@@ -11,6 +11,12 @@ import pexyn.Semantics.Guard;
  * @author romanm
  */
 public abstract class BoolExpr extends Expr implements Guard {
+	/**
+	 * The compiled form of this expression (see {@link JminorCompiler}), or null
+	 * if it has not been compiled yet.
+	 */
+	JminorCompiler.CompiledCond compiled;
+
 	protected BoolExpr(List<Node> nodes) {
 		super(nodes);
 	}
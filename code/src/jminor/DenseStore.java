@@ -0,0 +1,599 @@
+package jminor;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A store whose variables, object states, and fields are kept in one array of
+ * words, at the indices given by a {@link Layout}, which is fixed for a
+ * synthesis problem. Assignments copy the array and update a single word, and
+ * stores with the same layout are compared by their arrays.<br>
+ * The sets and maps of {@link JmStore} are read-only views of the array, so
+ * dense stores can be used wherever stores are. Updates that the layout cannot
+ * represent, such as assigning an object that it does not know, fall back to
+ * the representation of {@link JmStore}.
+ *
+ * @author romanm
+ */
+public class DenseStore extends JmStore {
+	/**
+	 * The word of uninitialized variables and fields.
+	 */
+	private static final long UNDEFINED = 0;
+
+	private static final long INT_TAG = 1L << 32;
+	private static final long BOOLEAN_TAG = 2L << 32;
+	private static final long OBJ_TAG = 3L << 32;
+
+	// The bits of the words holding the states of objects.
+	private static final long ALLOCATED = 1;
+	private static final long FREE = 2;
+	/**
+	 * Marks objects that the heap maps, possibly to no fields.
+	 */
+	private static final long MAPPED = 4;
+
+	public final Layout layout;
+	private final long[] slab;
+
+	private DenseStore(Layout layout, long[] slab) {
+		super(new ObjectSet(layout, slab, ALLOCATED), new ObjectSet(layout, slab, FREE), new EnvMap(layout, slab),
+				new HeapMap(layout, slab));
+		this.layout = layout;
+		this.slab = slab;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof DenseStore && ((DenseStore) o).layout == layout) {
+			DenseStore other = (DenseStore) o;
+			return this == other || fingerprint() == other.fingerprint() && Arrays.equals(slab, other.slab);
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public boolean isInitialized(Var var) {
+		return eval(var) != null;
+	}
+
+	@Override
+	public boolean isInitialized(Object obj, Field field) {
+		int objIndex = layout.objIndex(obj);
+		int slot = objIndex >= 0 ? layout.fieldSlot(objIndex, field) : -1;
+		return slot >= 0 && slab[slot] != UNDEFINED;
+	}
+
+	@Override
+	public Val eval(Var var) {
+		int index = layout.varIndex(var);
+		return index >= 0 ? layout.decode(slab[index]) : null;
+	}
+
+	@Override
+	public Obj eval(RefVar var) {
+		return (Obj) eval((Var) var);
+	}
+
+	@Override
+	public IntVal eval(PrimitiveVar var) {
+		return (IntVal) eval((Var) var);
+	}
+
+	@Override
+	public Val eval(Obj obj, Field field) {
+		int objIndex = layout.objIndex(obj);
+		int slot = objIndex >= 0 ? layout.fieldSlot(objIndex, field) : -1;
+		return slot >= 0 ? layout.decode(slab[slot]) : null;
+	}
+
+	@Override
+	public Obj eval(Obj obj, RefField field) {
+		assert obj != null;
+		return (Obj) eval(obj, (Field) field);
+	}
+
+	@Override
+	public IntVal eval(Obj obj, PrimitiveField field) {
+		assert obj != null;
+		return (IntVal) eval(obj, (Field) field);
+	}
+
+	@Override
+	public Optional<Obj> nextFree(RefType type) {
+		// Objects are laid out by their addresses.
+		for (int i = 0; i < layout.objs.length; ++i) {
+			if ((slab[layout.stateSlot(i)] & FREE) != 0 && layout.objs[i].type == type) {
+				return Optional.of(layout.objs[i]);
+			}
+		}
+		return Optional.empty();
+	}
+
+	@Override
+	public JmStore allocate(Obj obj) {
+		assert freeObjects.contains(obj);
+		int objIndex = layout.objIndex(obj);
+		long[] newSlab = slab.clone();
+		int stateSlot = layout.stateSlot(objIndex);
+		newSlab[stateSlot] = (newSlab[stateSlot] & ~FREE) | ALLOCATED | MAPPED;
+		Field[] fields = layout.objFields[objIndex];
+		for (int i = 0; i < fields.length; ++i) {
+			Field field = fields[i];
+			Val val = null;
+			if (field instanceof RefField) {
+				val = Obj.NULL;
+			} else if (field.dstType == IntType.v) {
+				val = IntVal.ZERO;
+			} else if (field.dstType == BooleanType.v) {
+				val = BooleanVal.FALSE;
+			}
+			newSlab[layout.fieldBase[objIndex] + i] = val != null ? layout.encode(val) : UNDEFINED;
+		}
+		long newFingerprint = fingerprint() + objectTerm(obj)
+				+ fieldTerms(obj, new FieldMap(layout, newSlab, objIndex));
+		if ((slab[stateSlot] & MAPPED) != 0) {
+			newFingerprint -= fieldTerms(obj, new FieldMap(layout, slab, objIndex));
+		}
+		return new DenseStore(layout, newSlab).setFingerprint(newFingerprint);
+	}
+
+	@Override
+	public JmStore assign(Var lvar, Val v) {
+		assert lvar != null && v != null && StoreUtils.typecheck(lvar, v);
+		int index = layout.varIndex(lvar);
+		long word = layout.encode(v);
+		if (index < 0 || word == UNDEFINED) {
+			return super.assign(lvar, v);
+		}
+		long[] newSlab = slab.clone();
+		newSlab[index] = word;
+		long newFingerprint = fingerprint() + varTerm(lvar, v);
+		if (slab[index] != UNDEFINED) {
+			newFingerprint -= varTerm(lvar, layout.decode(slab[index]));
+		}
+		return new DenseStore(layout, newSlab).setFingerprint(newFingerprint);
+	}
+
+	@Override
+	public JmStore assign(Obj lobj, Field field, Val v) {
+		assert lobj != null && field != null && v != null;
+		assert StoreUtils.typecheck(field, v);
+		assert StoreUtils.typecheck(field, lobj);
+		int objIndex = layout.objIndex(lobj);
+		int slot = objIndex >= 0 ? layout.fieldSlot(objIndex, field) : -1;
+		long word = layout.encode(v);
+		if (slot < 0 || word == UNDEFINED) {
+			return super.assign(lobj, field, v);
+		}
+		long[] newSlab = slab.clone();
+		newSlab[slot] = word;
+		newSlab[layout.stateSlot(objIndex)] |= MAPPED;
+		long newFingerprint = fingerprint() + fieldTerm(lobj, field, v);
+		if (slab[slot] != UNDEFINED) {
+			newFingerprint -= fieldTerm(lobj, field, layout.decode(slab[slot]));
+		}
+		return new DenseStore(layout, newSlab).setFingerprint(newFingerprint);
+	}
+
+	@Override
+	protected boolean isReachable(Obj target) {
+		int targetIndex = layout.objIndex(target);
+		if (targetIndex < 0) {
+			return false;
+		}
+		long targetWord = OBJ_TAG | targetIndex;
+		boolean[] visited = new boolean[layout.objs.length];
+		int[] open = new int[layout.objs.length];
+		int openSize = 0;
+		visited[0] = true;
+		for (int i = 0; i < layout.vars.length; ++i) {
+			long word = slab[i];
+			if (word == targetWord) {
+				return true;
+			}
+			if ((word & ~0xFFFFFFFFL) == OBJ_TAG && !visited[(int) word]) {
+				visited[(int) word] = true;
+				open[openSize++] = (int) word;
+			}
+		}
+		for (int next = 0; next < openSize; ++next) {
+			int objIndex = open[next];
+			int base = layout.fieldBase[objIndex];
+			for (int slot = base; slot < base + layout.objFields[objIndex].length; ++slot) {
+				long word = slab[slot];
+				if (word == targetWord) {
+					return true;
+				}
+				if ((word & ~0xFFFFFFFFL) == OBJ_TAG && !visited[(int) word]) {
+					visited[(int) word] = true;
+					open[openSize++] = (int) word;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Assigns indices to the variables and objects of a synthesis problem and to
+	 * the fields of every object. The array of a store holds the words of the
+	 * variables, followed by the states of the objects, followed by the fields of
+	 * each object in turn.
+	 *
+	 * @author romanm
+	 */
+	public static class Layout {
+		private final Var[] vars;
+		private final Map<Var, Integer> varToIndex = new HashMap<>();
+
+		/**
+		 * The objects ordered by their addresses, starting with the null object.
+		 */
+		private final Obj[] objs;
+		private final Map<Obj, Integer> objToIndex = new HashMap<>();
+
+		/**
+		 * The fields of each object, ordered by name, and the index of the first one
+		 * in the array.
+		 */
+		private final Field[][] objFields;
+		private final int[] fieldBase;
+
+		private final int size;
+
+		/**
+		 * Constructs a layout for the variables of the given semantics and the
+		 * variables and objects of the given stores.
+		 */
+		public Layout(JminorSemantics semantics, Iterable<JmStore> stores) {
+			Set<Var> allVars = new LinkedHashSet<>(semantics.vars);
+			Set<Obj> allObjs = new HashSet<>();
+			for (JmStore store : stores) {
+				if (store instanceof JmStore.JmErrorStore) {
+					continue;
+				}
+				allVars.addAll(store.env.keySet());
+				allObjs.addAll(store.objects);
+				allObjs.addAll(store.freeObjects);
+				addObjects(store.env.values(), allObjs);
+				for (Map.Entry<Obj, Map<Field, Val>> entry : store.heap.entrySet()) {
+					allObjs.add(entry.getKey());
+					addObjects(entry.getValue().values(), allObjs);
+				}
+			}
+			allObjs.remove(Obj.NULL);
+
+			vars = allVars.toArray(new Var[0]);
+			for (int i = 0; i < vars.length; ++i) {
+				varToIndex.put(vars[i], i);
+			}
+
+			List<Obj> objList = new ArrayList<>(allObjs);
+			objList.sort(Obj.ADDRESS_ORDER);
+			objList.add(0, Obj.NULL);
+			objs = objList.toArray(new Obj[0]);
+			objFields = new Field[objs.length][];
+			fieldBase = new int[objs.length];
+			Map<RefType, Field[]> typeToFields = new HashMap<>();
+			int next = vars.length + objs.length;
+			for (int i = 0; i < objs.length; ++i) {
+				objToIndex.put(objs[i], i);
+				objFields[i] = typeToFields.computeIfAbsent(objs[i].type, type -> {
+					var fields = new ArrayList<>(type.fields);
+					fields.sort(Comparator.comparing(field -> field.name));
+					return fields.toArray(new Field[0]);
+				});
+				fieldBase[i] = next;
+				next += objFields[i].length;
+			}
+			size = next;
+		}
+
+		private static void addObjects(Iterable<Val> vals, Set<Obj> result) {
+			for (Val val : vals) {
+				if (val instanceof Obj) {
+					result.add((Obj) val);
+				}
+			}
+		}
+
+		/**
+		 * Returns a dense store equal to the given store, or the given store itself
+		 * if it is an error store, or this layout cannot represent it.
+		 */
+		public JmStore toDense(JmStore store) {
+			if (store instanceof JmStore.JmErrorStore
+					|| store instanceof DenseStore && ((DenseStore) store).layout == this) {
+				return store;
+			}
+			long[] slab = new long[size];
+			for (Map.Entry<Var, Val> entry : store.env.entrySet()) {
+				int index = varIndex(entry.getKey());
+				long word = encode(entry.getValue());
+				if (index < 0 || word == UNDEFINED) {
+					return store;
+				}
+				slab[index] = word;
+			}
+			for (Obj obj : store.objects) {
+				int objIndex = objIndex(obj);
+				if (objIndex < 0) {
+					return store;
+				}
+				slab[stateSlot(objIndex)] |= ALLOCATED;
+			}
+			for (Obj obj : store.freeObjects) {
+				int objIndex = objIndex(obj);
+				if (objIndex < 0) {
+					return store;
+				}
+				slab[stateSlot(objIndex)] |= FREE;
+			}
+			for (Map.Entry<Obj, Map<Field, Val>> objEntry : store.heap.entrySet()) {
+				int objIndex = objIndex(objEntry.getKey());
+				if (objIndex < 0) {
+					return store;
+				}
+				slab[stateSlot(objIndex)] |= MAPPED;
+				for (Map.Entry<Field, Val> fieldEntry : objEntry.getValue().entrySet()) {
+					int slot = fieldSlot(objIndex, fieldEntry.getKey());
+					long word = encode(fieldEntry.getValue());
+					if (slot < 0 || word == UNDEFINED) {
+						return store;
+					}
+					slab[slot] = word;
+				}
+			}
+			return new DenseStore(this, slab);
+		}
+
+		private int varIndex(Object var) {
+			Integer result = varToIndex.get(var);
+			return result != null ? result : -1;
+		}
+
+		private int objIndex(Object obj) {
+			Integer result = objToIndex.get(obj);
+			return result != null ? result : -1;
+		}
+
+		private int stateSlot(int objIndex) {
+			return vars.length + objIndex;
+		}
+
+		/**
+		 * Returns the index of the given field of the given object in the array, or
+		 * -1 if the object does not have that field.
+		 */
+		private int fieldSlot(int objIndex, Object field) {
+			Field[] fields = objFields[objIndex];
+			for (int i = 0; i < fields.length; ++i) {
+				if (fields[i].equals(field)) {
+					return fieldBase[objIndex] + i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Returns the word representing the given value, or {@link #UNDEFINED} if
+		 * the value cannot be represented.
+		 */
+		private long encode(Val val) {
+			if (val instanceof IntVal) {
+				return INT_TAG | (((IntVal) val).num & 0xFFFFFFFFL);
+			} else if (val instanceof BooleanVal) {
+				return BOOLEAN_TAG | (((BooleanVal) val).val ? 1 : 0);
+			} else if (val instanceof Obj) {
+				int objIndex = objIndex(val);
+				return objIndex >= 0 ? OBJ_TAG | objIndex : UNDEFINED;
+			} else {
+				return UNDEFINED;
+			}
+		}
+
+		/**
+		 * Returns the value represented by the given word, or null for
+		 * {@link #UNDEFINED}.
+		 */
+		private Val decode(long word) {
+			long tag = word & ~0xFFFFFFFFL;
+			if (tag == INT_TAG) {
+				return new IntVal((int) word);
+			} else if (tag == BOOLEAN_TAG) {
+				return BooleanVal.get((int) word != 0);
+			} else if (tag == OBJ_TAG) {
+				return objs[(int) word];
+			} else {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * The objects whose state word has a given bit set.
+	 */
+	private static class ObjectSet extends AbstractSet<Obj> {
+		private final Layout layout;
+		private final long[] slab;
+		private final long bit;
+
+		public ObjectSet(Layout layout, long[] slab, long bit) {
+			this.layout = layout;
+			this.slab = slab;
+			this.bit = bit;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			int objIndex = layout.objIndex(o);
+			return objIndex >= 0 && (slab[layout.stateSlot(objIndex)] & bit) != 0;
+		}
+
+		@Override
+		public Iterator<Obj> iterator() {
+			List<Obj> result = new ArrayList<>();
+			for (int i = 0; i < layout.objs.length; ++i) {
+				if ((slab[layout.stateSlot(i)] & bit) != 0) {
+					result.add(layout.objs[i]);
+				}
+			}
+			return result.iterator();
+		}
+
+		@Override
+		public int size() {
+			int result = 0;
+			for (int i = 0; i < layout.objs.length; ++i) {
+				if ((slab[layout.stateSlot(i)] & bit) != 0) {
+					++result;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The initialized variables.
+	 */
+	private static class EnvMap extends AbstractMap<Var, Val> {
+		private final Layout layout;
+		private final long[] slab;
+
+		public EnvMap(Layout layout, long[] slab) {
+			this.layout = layout;
+			this.slab = slab;
+		}
+
+		@Override
+		public Val get(Object key) {
+			int index = layout.varIndex(key);
+			return index >= 0 ? layout.decode(slab[index]) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<Var, Val>> entrySet() {
+			List<Map.Entry<Var, Val>> result = new ArrayList<>();
+			for (int i = 0; i < layout.vars.length; ++i) {
+				if (slab[i] != UNDEFINED) {
+					result.add(new SimpleImmutableEntry<>(layout.vars[i], layout.decode(slab[i])));
+				}
+			}
+			return new ListSet<>(result);
+		}
+	}
+
+	/**
+	 * The objects mapped by the heap.
+	 */
+	private static class HeapMap extends AbstractMap<Obj, Map<Field, Val>> {
+		private final Layout layout;
+		private final long[] slab;
+
+		public HeapMap(Layout layout, long[] slab) {
+			this.layout = layout;
+			this.slab = slab;
+		}
+
+		@Override
+		public Map<Field, Val> get(Object key) {
+			int objIndex = layout.objIndex(key);
+			if (objIndex < 0 || (slab[layout.stateSlot(objIndex)] & MAPPED) == 0) {
+				return null;
+			}
+			return new FieldMap(layout, slab, objIndex);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<Obj, Map<Field, Val>>> entrySet() {
+			List<Map.Entry<Obj, Map<Field, Val>>> result = new ArrayList<>();
+			for (int i = 0; i < layout.objs.length; ++i) {
+				if ((slab[layout.stateSlot(i)] & MAPPED) != 0) {
+					result.add(new SimpleImmutableEntry<>(layout.objs[i], new FieldMap(layout, slab, i)));
+				}
+			}
+			return new ListSet<>(result);
+		}
+	}
+
+	/**
+	 * The initialized fields of an object.
+	 */
+	private static class FieldMap extends AbstractMap<Field, Val> {
+		private final Layout layout;
+		private final long[] slab;
+		private final int objIndex;
+
+		public FieldMap(Layout layout, long[] slab, int objIndex) {
+			this.layout = layout;
+			this.slab = slab;
+			this.objIndex = objIndex;
+		}
+
+		@Override
+		public Val get(Object key) {
+			int slot = layout.fieldSlot(objIndex, key);
+			return slot >= 0 ? layout.decode(slab[slot]) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<Field, Val>> entrySet() {
+			List<Map.Entry<Field, Val>> result = new ArrayList<>();
+			Field[] fields = layout.objFields[objIndex];
+			for (int i = 0; i < fields.length; ++i) {
+				long word = slab[layout.fieldBase[objIndex] + i];
+				if (word != UNDEFINED) {
+					result.add(new SimpleImmutableEntry<>(fields[i], layout.decode(word)));
+				}
+			}
+			return new ListSet<>(result);
+		}
+	}
+
+	/**
+	 * A set of distinct elements given by a list.
+	 */
+	private static class ListSet<E> extends AbstractSet<E> {
+		private final List<E> elements;
+
+		public ListSet(List<E> elements) {
+			this.elements = elements;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return elements.iterator();
+		}
+
+		@Override
+		public int size() {
+			return elements.size();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package jminor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the statements that can help to reach the stores agreeing with a
+ * target store. The relevant locations are the variables and fields bound by
+ * the target, and the locations read by relevant statements, which are the
+ * statements that write relevant locations or references.<br>
+ * Omitting the other statements from a plan yields a plan that computes the
+ * same values for all relevant locations, since they are computed only from
+ * relevant locations, and the same heap, since all statements that write
+ * references are kept. The omitted statements therefore cannot enable the
+ * remaining ones, including by keeping objects reachable, and the resulting
+ * plan is shorter.
+ *
+ * @author romanm
+ */
+public class GoalRelevance {
+	/**
+	 * Returns the statements among the given ones that are relevant for the given
+	 * target, in their original order. All statements are relevant if any of
+	 * them is not an assignment.
+	 */
+	public static List<Stmt> relevantStmts(Collection<Stmt> stmts, JmStore target) {
+		List<StmtFootprint> footprints = new ArrayList<>(stmts.size());
+		for (Stmt stmt : stmts) {
+			if (!(stmt instanceof AssignStmt)) {
+				return new ArrayList<>(stmts);
+			}
+			footprints.add(new StmtFootprint((AssignStmt) stmt));
+		}
+
+		Set<Object> relevantLocations = new HashSet<>(target.getEnvMap().keySet());
+		for (Obj obj : target.getObjects()) {
+			relevantLocations.addAll(target.geFields(obj).keySet());
+		}
+		boolean[] relevant = new boolean[footprints.size()];
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < relevant.length; ++i) {
+				StmtFootprint footprint = footprints.get(i);
+				if (!relevant[i] && (footprint.writes.contains(StmtFootprint.REACHABILITY)
+						|| !Collections.disjoint(footprint.writes, relevantLocations))) {
+					relevant[i] = true;
+					changed |= relevantLocations.addAll(footprint.reads);
+				}
+			}
+		}
+
+		List<Stmt> result = new ArrayList<>();
+		int i = 0;
+		for (Stmt stmt : stmts) {
+			if (relevant[i++]) {
+				result.add(stmt);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,145 @@
+package jminor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import pexyn.planning.StateEquivalence;
+
+/**
+ * Identifies stores whose heaps are isomorphic, i.e., stores that are equal up
+ * to a renaming of the objects that the goal does not mention. Such stores
+ * enable the same statements, which lead to isomorphic stores, since
+ * statements refer to objects only through variables and fields.<br>
+ * The key of a store is its canonical form, where every object that is not
+ * mentioned by the target store is replaced by its position in a traversal of
+ * the heap, going over the variables by name and the fields of each object by
+ * name. Objects mentioned by the target keep their identities, since the goal
+ * test matches them by identity.
+ *
+ * @author romanm
+ */
+public class HeapSymmetry implements StateEquivalence<JmStore> {
+	private static final Comparator<Var> varOrder = Comparator.comparing(var -> var.name);
+	private static final Comparator<Field> fieldOrder = Comparator.comparing(field -> field.name);
+
+	@Override
+	public Object key(JmStore store, JmStore target) {
+		if (store instanceof JmStore.JmErrorStore) {
+			return store;
+		}
+		return canonicalForm(store, target != null ? mentionedObjects(target) : Set.of());
+	}
+
+	/**
+	 * Returns the objects of the given store and the objects referenced by its
+	 * variables and fields.
+	 */
+	public static Set<Obj> mentionedObjects(JmStore store) {
+		Set<Obj> result = new HashSet<>(store.getObjects());
+		for (Val val : store.getEnvMap().values()) {
+			if (val instanceof Obj) {
+				result.add((Obj) val);
+			}
+		}
+		for (Obj obj : store.getObjects()) {
+			for (Val val : store.geFields(obj).values()) {
+				if (val instanceof Obj) {
+					result.add((Obj) val);
+				}
+			}
+		}
+		result.remove(Obj.NULL);
+		return result;
+	}
+
+	/**
+	 * Returns the canonical form of the given store, as a list of its variables,
+	 * object contents, and free objects. Two stores have equal canonical forms if
+	 * and only if they are equal up to a renaming of the objects outside of the
+	 * given set, which keep their identities.
+	 */
+	public static List<Object> canonicalForm(JmStore store, Set<Obj> fixed) {
+		List<Object> result = new ArrayList<>();
+		Map<Obj, Integer> labels = new HashMap<>();
+		Deque<Obj> toVisit = new ArrayDeque<>();
+
+		var vars = new ArrayList<>(store.getEnvMap().keySet());
+		vars.sort(varOrder);
+		for (Var var : vars) {
+			result.add(var);
+			result.add(label(store.eval(var), fixed, labels, toVisit));
+		}
+
+		// Objects that are unreachable from the variables are visited by their
+		// addresses, which keeps the form deterministic, although not canonical.
+		var objects = new ArrayList<>(store.getObjects());
+		objects.sort(Obj.ADDRESS_ORDER);
+		int nextUnreached = 0;
+		while (true) {
+			if (toVisit.isEmpty()) {
+				while (nextUnreached < objects.size() && labels.containsKey(objects.get(nextUnreached))) {
+					++nextUnreached;
+				}
+				if (nextUnreached == objects.size()) {
+					break;
+				}
+				label(objects.get(nextUnreached), fixed, labels, toVisit);
+			}
+			Obj obj = toVisit.poll();
+			result.add(obj.type);
+			result.add(labels.get(obj));
+			if (!store.getObjects().contains(obj)) {
+				result.add(-1);
+				continue;
+			}
+			var fields = new ArrayList<>(store.geFields(obj).keySet());
+			fields.sort(fieldOrder);
+			result.add(fields.size());
+			for (Field field : fields) {
+				result.add(field);
+				result.add(label(store.eval(obj, field), fixed, labels, toVisit));
+			}
+		}
+
+		// Free objects that keep their identities are listed by their addresses,
+		// and the others are counted by type.
+		var freeObjects = new ArrayList<>(store.freeObjects);
+		freeObjects.sort(Obj.ADDRESS_ORDER);
+		Map<String, Integer> freeCounts = new TreeMap<>();
+		for (Obj obj : freeObjects) {
+			if (fixed.contains(obj)) {
+				result.add(obj);
+			} else {
+				freeCounts.merge(obj.type.name, 1, Integer::sum);
+			}
+		}
+		result.add(freeCounts);
+		return result;
+	}
+
+	/**
+	 * Returns the canonical representative of the given value, labelling objects
+	 * that are encountered for the first time and scheduling them for a visit.
+	 */
+	private static Object label(Val val, Set<Obj> fixed, Map<Obj, Integer> labels, Deque<Obj> toVisit) {
+		if (!(val instanceof Obj) || val == Obj.NULL) {
+			return val;
+		}
+		Obj obj = (Obj) val;
+		Integer label = labels.get(obj);
+		if (label == null) {
+			label = labels.size();
+			labels.put(obj, label);
+			toVisit.add(obj);
+		}
+		return fixed.contains(obj) ? obj : label;
+	}
+}
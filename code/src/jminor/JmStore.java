@@ -1,5 +1,6 @@
 package jminor;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -17,7 +18,11 @@ import pexyn.Semantics.Store;
 
 /**
  * Represents a concrete store of a Jminor program. Uninitialized variables and
- * fields are treated as null.
+ * fields are treated as null.<br>
+ * Assignments and allocations represent the environment and the heap of the
+ * resulting stores by {@link PersistentMap}s, which share all unmodified
+ * variables, objects, and fields with the original store. Stores that are
+ * constructed from other maps switch to persistent maps on their first update.
  * 
  * @author romanm
  */
@@ -42,6 +47,19 @@ public class JmStore implements Store {
 	 */
 	protected final Map<Obj, Map<Field, Val>> heap;
 
+	/**
+	 * Caches the result of {@link #containsGarbage()}, or null if it has not been
+	 * computed yet.
+	 */
+	private Boolean garbage;
+
+	/**
+	 * Caches the result of {@link #fingerprint()}, which is valid once
+	 * {@link #hasFingerprint} is set.
+	 */
+	private long fingerprint;
+	private volatile boolean hasFingerprint;
+
 	public static JmStore error(Object... description) {
 		return new JmErrorStore(description);
 	}
@@ -111,6 +129,8 @@ public class JmStore implements Store {
 		if (this == o)
 			return true;
 		JmStore other = (JmStore) o;
+		if (fingerprint() != other.fingerprint())
+			return false;
 		if (!objects.equals(other.objects))
 			return false;
 		if (!freeObjects.equals(other.freeObjects))
@@ -133,12 +153,76 @@ public class JmStore implements Store {
 
 	@Override
 	public int hashCode() {
-		int result = objects.hashCode();
-		result = result * 31 + env.hashCode();
-		result = result * 31 + heap.hashCode();
+		long result = fingerprint();
+		return (int) (result ^ (result >>> 32));
+	}
+
+	/**
+	 * Returns a 64-bit hash of this store, for planners that remember stores by
+	 * their fingerprints. Equal stores have equal fingerprints.<br>
+	 * The fingerprint is a sum of terms, one for each object, variable binding,
+	 * and field binding, so the stores resulting from assignments and allocations
+	 * obtain their fingerprints by adjusting the terms of the updated bindings.
+	 * Other stores compute their fingerprints on first use, after which their maps
+	 * must not be modified.
+	 */
+	public long fingerprint() {
+		if (!hasFingerprint) {
+			long result = 0;
+			for (Obj obj : objects) {
+				result += objectTerm(obj);
+			}
+			for (Map.Entry<Var, Val> entry : env.entrySet()) {
+				result += varTerm(entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<Obj, Map<Field, Val>> objEntry : heap.entrySet()) {
+				result += fieldTerms(objEntry.getKey(), objEntry.getValue());
+			}
+			setFingerprint(result);
+		}
+		return fingerprint;
+	}
+
+	JmStore setFingerprint(long fingerprint) {
+		this.fingerprint = fingerprint;
+		this.hasFingerprint = true;
+		return this;
+	}
+
+	static long objectTerm(Obj obj) {
+		return mix(~(long) obj.hashCode());
+	}
+
+	static long varTerm(Var var, Val val) {
+		return mix(pack(var.hashCode(), val.hashCode()));
+	}
+
+	static long fieldTerm(Obj obj, Field field, Val val) {
+		return mix(mix(obj.hashCode()) ^ pack(field.hashCode(), val.hashCode()));
+	}
+
+	static long fieldTerms(Obj obj, Map<Field, Val> fields) {
+		long result = 0;
+		for (Map.Entry<Field, Val> fieldEntry : fields.entrySet()) {
+			result += fieldTerm(obj, fieldEntry.getKey(), fieldEntry.getValue());
+		}
 		return result;
 	}
 
+	private static long pack(int high, int low) {
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * The finalizer of the SplitMix64 generator, which spreads the bits of the
+	 * given value over the entire result.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	/**
 	 * Returns the store obtained by unmapping the given set of variables and
 	 * performing garbage collections.
@@ -156,10 +240,73 @@ public class JmStore implements Store {
 	}
 
 	public boolean containsGarbage() {
-		int numObjects = objects.size();
-		JmStore gfree = removeGarbage();
-		int numObjectsAfterGC = gfree.getObjects().size();
-		return numObjects != numObjectsAfterGC;
+		Boolean result = garbage;
+		if (result == null) {
+			int numObjects = objects.size();
+			JmStore gfree = removeGarbage();
+			int numObjectsAfterGC = gfree.getObjects().size();
+			result = numObjects != numObjectsAfterGC;
+			garbage = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Tests whether this store contains garbage, given that it results from the
+	 * given store by allocating objects and overwriting one variable or field,
+	 * which held the given value.<br>
+	 * Allocated objects are reachable through the overwritten location, and
+	 * objects that become unreachable by overwriting a reference are only
+	 * reachable through the overwritten object. It is therefore enough to check
+	 * whether the overwritten object is still reachable, and the search for it
+	 * stops as soon as it is found.
+	 */
+	public boolean containsGarbage(JmStore pre, Val overwritten) {
+		Boolean result = garbage;
+		if (result == null) {
+			if (pre.containsGarbage()) {
+				result = true;
+			} else if (!(overwritten instanceof Obj) || overwritten == Obj.NULL || !objects.contains(overwritten)) {
+				result = false;
+			} else {
+				result = !isReachable((Obj) overwritten);
+			}
+			garbage = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Tests whether the given object is reachable from the variables.
+	 */
+	protected boolean isReachable(Obj target) {
+		for (Val v : env.values()) {
+			if (v == target) {
+				return true;
+			}
+		}
+		ArrayDeque<Obj> open = new ArrayDeque<>();
+		Set<Obj> visited = new HashSet<>();
+		for (Val v : env.values()) {
+			if (v instanceof Obj && v != Obj.NULL && visited.add((Obj) v)) {
+				open.add((Obj) v);
+			}
+		}
+		while (!open.isEmpty()) {
+			Map<Field, Val> objFields = heap.get(open.poll());
+			if (objFields == null) {
+				continue;
+			}
+			for (Val fieldVal : objFields.values()) {
+				if (fieldVal == target) {
+					return true;
+				}
+				if (fieldVal instanceof Obj && fieldVal != Obj.NULL && visited.add((Obj) fieldVal)) {
+					open.add((Obj) fieldVal);
+				}
+			}
+		}
+		return false;
 	}
 
 	public boolean isInitialized(Var var) {
@@ -270,20 +417,50 @@ public class JmStore implements Store {
 	}
 
 	/**
-	 * Returns a free object of the given type, if there is one available and an
-	 * empty result otherwise.
+	 * Returns the free object of the given type with the least address, if there
+	 * is one available and an empty result otherwise. The store is not modified,
+	 * and the object is allocated by {@link #allocate(Obj)}.
 	 * 
 	 * @param type
 	 *            The type of the object to allocate.
 	 */
-	public Optional<Obj> allocate(RefType type) {
+	public Optional<Obj> nextFree(RefType type) {
+		Obj result = null;
 		for (Obj o : freeObjects) {
-			if (o.type == type) {
-				freeObjects.remove(o);
-				return Optional.of(o);
+			if (o.type == type && (result == null || Obj.ADDRESS_ORDER.compare(o, result) < 0)) {
+				result = o;
 			}
 		}
-		return Optional.empty();
+		return Optional.ofNullable(result);
+	}
+
+	/**
+	 * Returns a new store, resulting from allocating the given free object, whose
+	 * fields are initialized to their default values, as in Java.
+	 */
+	public JmStore allocate(Obj obj) {
+		assert freeObjects.contains(obj);
+		Set<Obj> newObjects = new HashSet<>(objects);
+		newObjects.add(obj);
+		Set<Obj> newFreeObjects = new HashSet<>(freeObjects);
+		newFreeObjects.remove(obj);
+		PersistentMap<Field, Val> objFields = PersistentMap.empty();
+		for (Field field : obj.type.fields) {
+			if (field instanceof RefField) {
+				objFields = objFields.plus(field, Obj.NULL);
+			} else if (field.dstType == IntType.v) {
+				objFields = objFields.plus(field, IntVal.ZERO);
+			} else if (field.dstType == BooleanType.v) {
+				objFields = objFields.plus(field, BooleanVal.FALSE);
+			}
+		}
+		Map<Obj, Map<Field, Val>> newHeap = PersistentMap.from(heap).plus(obj, objFields);
+		long newFingerprint = fingerprint() + objectTerm(obj) + fieldTerms(obj, objFields);
+		Map<Field, Val> oldFields = heap.get(obj);
+		if (oldFields != null) {
+			newFingerprint -= fieldTerms(obj, oldFields);
+		}
+		return new JmStore(newObjects, newFreeObjects, env, newHeap).setFingerprint(newFingerprint);
 	}
 
 	/**
@@ -292,10 +469,14 @@ public class JmStore implements Store {
 	 */
 	public JmStore assign(Var lvar, Val v) {
 		assert lvar != null && v != null && StoreUtils.typecheck(lvar, v);
-		Map<Var, Val> newEnv = new HashMap<>(this.env);
-		newEnv.put(lvar, v);
+		Map<Var, Val> newEnv = PersistentMap.from(this.env).plus(lvar, v);
+		long newFingerprint = fingerprint() + varTerm(lvar, v);
+		Val old = env.get(lvar);
+		if (old != null) {
+			newFingerprint -= varTerm(lvar, old);
+		}
 		JmStore newState = new JmStore(this.objects, this.freeObjects, newEnv, this.heap);
-		return newState;
+		return newState.setFingerprint(newFingerprint);
 	}
 
 	public JmStore assign(Var t1, RefVar x) {
@@ -307,15 +488,18 @@ public class JmStore implements Store {
 		assert StoreUtils.typecheck(field, v);
 		assert StoreUtils.typecheck(field, lobj);
 
-		Map<Obj, Map<Field, Val>> newHeap = new HashMap<>(heap);
-		Map<Field, Val> lobjFields = newHeap.get(lobj);
-		lobjFields = lobjFields == null ? Collections.emptyMap() : lobjFields;
-		lobjFields = new HashMap<>(lobjFields);
-		newHeap.put(lobj, lobjFields);
-		lobjFields.put(field, v);
+		PersistentMap<Obj, Map<Field, Val>> persistentHeap = PersistentMap.from(heap);
+		Map<Field, Val> lobjFields = persistentHeap.get(lobj);
+		lobjFields = lobjFields == null ? PersistentMap.empty() : lobjFields;
+		Map<Obj, Map<Field, Val>> newHeap = persistentHeap.plus(lobj, PersistentMap.from(lobjFields).plus(field, v));
+		long newFingerprint = fingerprint() + fieldTerm(lobj, field, v);
+		Val old = lobjFields.get(field);
+		if (old != null) {
+			newFingerprint -= fieldTerm(lobj, field, old);
+		}
 
 		JmStore newState = new JmStore(this.objects, this.freeObjects, this.env, newHeap);
-		return newState;
+		return newState.setFingerprint(newFingerprint);
 	}
 
 	public JmStore assign(RefVar lref, Field field, Val v) {
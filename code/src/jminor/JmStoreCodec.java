@@ -0,0 +1,122 @@
+package jminor;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pexyn.planning.PlanCodec;
+
+/**
+ * Encodes Jminor planning problems for the plan cache. Objects are encoded by
+ * the order in which they are first reached, going over the variables by name
+ * and the fields of each object by name, starting from the start store and
+ * continuing to the target store. Problems that differ only in object
+ * identities therefore have the same encoding.
+ *
+ * @author romanm
+ */
+public class JmStoreCodec implements PlanCodec<JmStore, Stmt> {
+	private static final Comparator<Var> varOrder = Comparator.comparing(var -> var.name);
+	private static final Comparator<Field> fieldOrder = Comparator.comparing(field -> field.name);
+
+	private final List<Stmt> actions;
+
+	public JmStoreCodec(JminorSemantics semantics) {
+		this.actions = new ArrayList<>(semantics.stmts);
+	}
+
+	@Override
+	public List<Stmt> actions() {
+		return actions;
+	}
+
+	@Override
+	public void writeProblem(JmStore start, JmStore target, DataOutputStream out) throws IOException {
+		Map<Obj, Integer> labels = new HashMap<>();
+		writeStore(start, labels, out);
+		writeStore(target, labels, out);
+	}
+
+	private void writeStore(JmStore store, Map<Obj, Integer> labels, DataOutputStream out) throws IOException {
+		Deque<Obj> toVisit = new ArrayDeque<>();
+		Set<Obj> scheduled = new HashSet<>();
+		var vars = new ArrayList<>(store.getEnvMap().keySet());
+		vars.sort(varOrder);
+		out.writeInt(vars.size());
+		for (Var var : vars) {
+			out.writeUTF(var.name);
+			writeVal(store.eval(var), labels, scheduled, toVisit, out);
+		}
+
+		// Objects that are unreachable from the variables are visited by their
+		// names, to keep the encoding deterministic.
+		var objects = new ArrayList<>(store.getObjects());
+		objects.sort(Comparator.comparing(Obj::toString));
+		out.writeInt(objects.size());
+		int nextUnreached = 0;
+		while (true) {
+			if (toVisit.isEmpty()) {
+				while (nextUnreached < objects.size() && scheduled.contains(objects.get(nextUnreached))) {
+					++nextUnreached;
+				}
+				if (nextUnreached == objects.size()) {
+					break;
+				}
+				writeVal(objects.get(nextUnreached), labels, scheduled, toVisit, out);
+			}
+			Obj obj = toVisit.poll();
+			if (!store.getObjects().contains(obj)) {
+				continue;
+			}
+			var fields = new ArrayList<>(store.geFields(obj).keySet());
+			fields.sort(fieldOrder);
+			out.writeInt(labels.get(obj));
+			out.writeInt(fields.size());
+			for (Field field : fields) {
+				out.writeUTF(field.name);
+				writeVal(store.eval(obj, field), labels, scheduled, toVisit, out);
+			}
+		}
+	}
+
+	/**
+	 * Writes the given value, labelling objects that are encountered for the
+	 * first time and scheduling objects for a visit the first time they are
+	 * encountered in the current store.
+	 */
+	private void writeVal(Val val, Map<Obj, Integer> labels, Set<Obj> scheduled, Deque<Obj> toVisit,
+			DataOutputStream out) throws IOException {
+		if (val == Obj.NULL) {
+			out.writeByte('n');
+		} else if (val instanceof Obj) {
+			Obj obj = (Obj) val;
+			Integer label = labels.get(obj);
+			if (label == null) {
+				label = labels.size();
+				labels.put(obj, label);
+			}
+			if (scheduled.add(obj)) {
+				toVisit.add(obj);
+			}
+			out.writeByte('o');
+			out.writeUTF(obj.type.name);
+			out.writeInt(label);
+		} else if (val instanceof IntVal) {
+			out.writeByte('i');
+			out.writeInt(((IntVal) val).num);
+		} else if (val instanceof BooleanVal) {
+			out.writeByte('b');
+			out.writeBoolean(((BooleanVal) val).val);
+		} else {
+			throw new IllegalArgumentException("Unexpected value " + val + "!");
+		}
+	}
+}
@@ -0,0 +1,414 @@
+package jminor;
+
+import bgu.cs.util.treeGrammar.Node;
+import jminor.JmStore.JmErrorStore;
+
+/**
+ * Compiles statements and Boolean expressions into trees of closures, which
+ * evaluate them without the double dispatch and the mutable state of
+ * {@link JminorInterpreter}, and agree with it on every store, which is checked
+ * on every store they run on when assertions are enabled. The compiled form of
+ * a node is cached on the node. Compiled forms have no mutable state,
+ * so they can run concurrently, and a node that is compiled by several threads
+ * at once just ends up with one of the equivalent results.<br>
+ * Loops, parallel assignments, allocations nested inside expressions,
+ * comparison operators inside expressions, and abstract nodes are not
+ * compiled, and nodes containing them are run by the interpreter.
+ *
+ * @author romanm
+ */
+public class JminorCompiler {
+	/**
+	 * A compiled statement, which returns the store resulting from running the
+	 * statement, or an error store.
+	 */
+	@FunctionalInterface
+	public interface CompiledStmt {
+		public JmStore run(JmStore store);
+	}
+
+	/**
+	 * A compiled Boolean expression. Expressions whose evaluation fails are false.
+	 */
+	@FunctionalInterface
+	public interface CompiledCond {
+		public boolean test(JmStore store);
+	}
+
+	/**
+	 * A compiled expression, which returns either a value or an error store.
+	 */
+	@FunctionalInterface
+	private interface CompiledExpr {
+		public Object eval(JmStore store);
+	}
+
+	/**
+	 * Signals a node that the compiler does not handle.
+	 */
+	private static class UnsupportedNode extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedNode() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static final UnsupportedNode unsupported = new UnsupportedNode();
+
+	/**
+	 * Whether compiled forms are checked against the interpreter, which is the
+	 * case when assertions are enabled.
+	 */
+	private static final boolean checked;
+
+	static {
+		boolean assertionsEnabled = false;
+		assert assertionsEnabled = true;
+		checked = assertionsEnabled;
+	}
+
+	/**
+	 * Returns the compiled form of the given statement.
+	 */
+	public static CompiledStmt compile(Stmt stmt) {
+		CompiledStmt result = stmt.compiled;
+		if (result == null) {
+			try {
+				result = stmt.concrete() ? compileStmt(stmt) : interpreted(stmt);
+				if (checked && stmt.concrete()) {
+					result = checked(stmt, result);
+				}
+			} catch (UnsupportedNode e) {
+				result = interpreted(stmt);
+			}
+			stmt.compiled = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the compiled form of the given Boolean expression.
+	 */
+	public static CompiledCond compile(BoolExpr expr) {
+		CompiledCond result = expr.compiled;
+		if (result == null) {
+			try {
+				result = expr.concrete() ? compileCond(expr) : interpreted(expr);
+				if (checked && expr.concrete()) {
+					result = checked(expr, result);
+				}
+			} catch (UnsupportedNode e) {
+				result = interpreted(expr);
+			}
+			expr.compiled = result;
+		}
+		return result;
+	}
+
+	private static CompiledStmt interpreted(Stmt stmt) {
+		return store -> {
+			var interpreter = new JminorInterpreter();
+			return interpreter.run(stmt, store, interpreter.guessMaxSteps(stmt, store)).get();
+		};
+	}
+
+	private static CompiledCond interpreted(BoolExpr expr) {
+		return store -> {
+			Boolean result = new JminorInterpreter().test(expr, store);
+			return result != null && result.booleanValue();
+		};
+	}
+
+	/**
+	 * Wraps the compiled form of the given statement with an assertion that it
+	 * agrees with the interpreter, where all error stores are considered equal.
+	 */
+	private static CompiledStmt checked(Stmt stmt, CompiledStmt compiled) {
+		CompiledStmt reference = interpreted(stmt);
+		return store -> {
+			JmStore result = compiled.run(store);
+			JmStore expected = reference.run(store);
+			assert result instanceof JmErrorStore ? expected instanceof JmErrorStore
+					: result.equals(expected) : "Compiled " + stmt + " disagrees with the interpreter on " + store;
+			return result;
+		};
+	}
+
+	/**
+	 * Wraps the compiled form of the given Boolean expression with an assertion
+	 * that it agrees with the interpreter.
+	 */
+	private static CompiledCond checked(BoolExpr expr, CompiledCond compiled) {
+		CompiledCond reference = interpreted(expr);
+		return store -> {
+			boolean result = compiled.test(store);
+			assert result == reference.test(store) : "Compiled " + expr + " disagrees with the interpreter on " + store;
+			return result;
+		};
+	}
+
+	private static CompiledStmt compileStmt(Node n) throws UnsupportedNode {
+		if (n instanceof AssignStmt) {
+			return compileAssign((AssignStmt) n);
+		} else if (n instanceof SeqStmt) {
+			var subs = n.getArgs();
+			CompiledStmt[] compiledSubs = new CompiledStmt[subs.size()];
+			for (int i = 0; i < compiledSubs.length; ++i) {
+				compiledSubs[i] = compileStmt(subs.get(i));
+			}
+			return store -> {
+				for (CompiledStmt sub : compiledSubs) {
+					store = sub.run(store);
+					if (store instanceof JmErrorStore) {
+						break;
+					}
+				}
+				return store;
+			};
+		} else if (n instanceof IfStmt) {
+			IfStmt ifStmt = (IfStmt) n;
+			CompiledCond cond = compileCond(ifStmt.getCond());
+			CompiledStmt thenStmt = compileStmt(ifStmt.getThenNode());
+			CompiledStmt elseStmt = compileStmt(ifStmt.getElseNode());
+			return store -> cond.test(store) ? thenStmt.run(store) : elseStmt.run(store);
+		} else if (n instanceof SkipStmt || n instanceof RetStmt) {
+			return store -> store;
+		} else {
+			throw unsupported;
+		}
+	}
+
+	/**
+	 * A compiled update of the left-hand side of an assignment, which returns the
+	 * store resulting from assigning the given value to the given store, or an
+	 * error store. The store before the assignment, which may differ from the
+	 * given store by allocations, is used to check for leaks.
+	 */
+	@FunctionalInterface
+	private interface CompiledUpdate {
+		public JmStore assign(JmStore pre, JmStore store, Val rval);
+	}
+
+	private static CompiledStmt compileAssign(AssignStmt n) throws UnsupportedNode {
+		CompiledUpdate update = compileUpdate(n.getLhs());
+		CompiledStmt assign;
+		if (n.getRhs() instanceof NewExpr) {
+			RefType type = ((NewExpr) n.getRhs()).getType();
+			assign = store -> {
+				var allocResult = store.nextFree(type);
+				if (!allocResult.isPresent()) {
+					return JmStore.error("Allocation error, out of ", type.getName(), " objects!");
+				}
+				return update.assign(store, store.allocate(allocResult.get()), allocResult.get());
+			};
+		} else {
+			CompiledExpr rhs = compileExpr(n.getRhs());
+			assign = store -> {
+				Object rval = rhs.eval(store);
+				if (rval instanceof JmErrorStore) {
+					return (JmStore) rval;
+				}
+				return update.assign(store, store, (Val) rval);
+			};
+		}
+		return assign;
+	}
+
+	private static CompiledUpdate compileUpdate(Node lhs) throws UnsupportedNode {
+		if (lhs instanceof VarExpr) {
+			Var lvar = ((VarExpr) lhs).getVar();
+			return (pre, store, rval) -> {
+				Val overwritten = store.eval(lvar);
+				return checkLeaks(pre, store.assign(lvar, rval), overwritten);
+			};
+		} else if (lhs instanceof DerefExpr) {
+			DerefExpr lhsDeref = (DerefExpr) lhs;
+			CompiledExpr base = compileExpr(lhsDeref.getLhs());
+			Field field = lhsDeref.getField();
+			return (pre, store, rval) -> {
+				Object lval = base.eval(store);
+				if (lval instanceof JmErrorStore) {
+					return (JmStore) lval;
+				}
+				if (lval == Obj.NULL) {
+					return JmStore.error("illegal dereference of ", lhs);
+				}
+				Val overwritten = store.eval((Obj) lval, field);
+				return checkLeaks(pre, store.assign((Obj) lval, field, rval), overwritten);
+			};
+		} else {
+			throw unsupported;
+		}
+	}
+
+	private static JmStore checkLeaks(JmStore pre, JmStore post, Val overwritten) {
+		return post.containsGarbage(pre, overwritten) ? JmStore.error("memory leak!") : post;
+	}
+
+	private static CompiledExpr compileExpr(Node n) throws UnsupportedNode {
+		if (n instanceof VarExpr) {
+			VarExpr varExpr = (VarExpr) n;
+			Var var = varExpr.getVar();
+			return store -> {
+				Val result = store.eval(var);
+				return result != null ? result : JmStore.error("Accessed uninitialized variable ", varExpr);
+			};
+		} else if (n instanceof ValExpr) {
+			Val val = ((ValExpr) n).getVal();
+			if (val == null) {
+				throw unsupported;
+			}
+			return store -> val;
+		} else if (n instanceof NullExpr) {
+			return store -> Obj.NULL;
+		} else if (n instanceof IntVal || n instanceof BooleanVal) {
+			return store -> n;
+		} else if (n instanceof DerefExpr) {
+			DerefExpr deref = (DerefExpr) n;
+			Node lhs = deref.getLhs();
+			CompiledExpr base = compileExpr(lhs);
+			Field field = deref.getField();
+			return store -> {
+				Object lval = base.eval(store);
+				if (lval instanceof JmErrorStore) {
+					return lval;
+				}
+				if (lval == Obj.NULL) {
+					return JmStore.error("null dereference of ", lhs);
+				}
+				Val result = store.eval((Obj) lval, field);
+				return result != null ? result : JmStore.error("dereference of ", lhs, " is undefined!");
+			};
+		} else if (n instanceof IntBinOpExpr) {
+			return compileIntBinOp((IntBinOpExpr) n);
+		} else {
+			throw unsupported;
+		}
+	}
+
+	private static CompiledExpr compileIntBinOp(IntBinOpExpr n) throws UnsupportedNode {
+		CompiledExpr lhs = compileExpr(n.getLhs());
+		CompiledExpr rhs = compileExpr(n.getRhs());
+		switch (n.op) {
+		case PLUS:
+			return store -> {
+				Object lval = lhs.eval(store);
+				if (lval instanceof JmErrorStore) {
+					return lval;
+				}
+				Object rval = rhs.eval(store);
+				if (rval instanceof JmErrorStore) {
+					return rval;
+				}
+				if (!(lval instanceof IntVal) || !(rval instanceof IntVal)) {
+					return JmStore.error("non-integer operands ", n);
+				}
+				return new IntVal(((IntVal) lval).num + ((IntVal) rval).num);
+			};
+		case MINUS:
+			return store -> {
+				Object lval = lhs.eval(store);
+				if (lval instanceof JmErrorStore) {
+					return lval;
+				}
+				Object rval = rhs.eval(store);
+				if (rval instanceof JmErrorStore) {
+					return rval;
+				}
+				if (!(lval instanceof IntVal) || !(rval instanceof IntVal)) {
+					return JmStore.error("non-integer operands ", n);
+				}
+				return new IntVal(((IntVal) lval).num - ((IntVal) rval).num);
+			};
+		case TIMES:
+			return store -> {
+				Object lval = lhs.eval(store);
+				if (lval instanceof JmErrorStore) {
+					return lval;
+				}
+				Object rval = rhs.eval(store);
+				if (rval instanceof JmErrorStore) {
+					return rval;
+				}
+				if (!(lval instanceof IntVal) || !(rval instanceof IntVal)) {
+					return JmStore.error("non-integer operands ", n);
+				}
+				return new IntVal(((IntVal) lval).num * ((IntVal) rval).num);
+			};
+		case DIVIDE:
+			return store -> {
+				Object lval = lhs.eval(store);
+				if (lval instanceof JmErrorStore) {
+					return lval;
+				}
+				Object rval = rhs.eval(store);
+				if (rval instanceof JmErrorStore) {
+					return rval;
+				}
+				if (!(lval instanceof IntVal) || !(rval instanceof IntVal)) {
+					return JmStore.error("non-integer operands ", n);
+				}
+				int rhsNum = ((IntVal) rval).num;
+				if (rhsNum == 0) {
+					return JmStore.error("division by zero");
+				}
+				return new IntVal(((IntVal) lval).num / rhsNum);
+			};
+		default:
+			// The interpreter gives comparisons a Boolean result, but not a value.
+			throw unsupported;
+		}
+	}
+
+	private static CompiledCond compileCond(Node n) throws UnsupportedNode {
+		if (n instanceof True) {
+			return store -> true;
+		} else if (n instanceof AndExpr) {
+			AndExpr and = (AndExpr) n;
+			CompiledCond lhs = compileCond(and.getLhs());
+			CompiledCond rhs = compileCond(and.getRhs());
+			return store -> lhs.test(store) && rhs.test(store);
+		} else if (n instanceof OrExpr) {
+			OrExpr or = (OrExpr) n;
+			CompiledCond lhs = compileCond(or.getLhs());
+			CompiledCond rhs = compileCond(or.getRhs());
+			return store -> lhs.test(store) || rhs.test(store);
+		} else if (n instanceof NotExpr) {
+			CompiledCond sub = compileCond(((NotExpr) n).getSub());
+			return store -> !sub.test(store);
+		} else if (n instanceof EqExpr) {
+			EqExpr eq = (EqExpr) n;
+			CompiledExpr lhs = compileExpr(eq.getLhs());
+			CompiledExpr rhs = compileExpr(eq.getRhs());
+			return store -> {
+				Object lval = lhs.eval(store);
+				if (lval instanceof JmErrorStore) {
+					return false;
+				}
+				Object rval = rhs.eval(store);
+				if (rval instanceof JmErrorStore) {
+					return false;
+				}
+				return lval.equals(rval);
+			};
+		} else if (n instanceof LtExpr) {
+			LtExpr lt = (LtExpr) n;
+			CompiledExpr lhs = compileExpr(lt.getLhs());
+			CompiledExpr rhs = compileExpr(lt.getRhs());
+			return store -> {
+				Object lval = lhs.eval(store);
+				if (lval instanceof JmErrorStore) {
+					return false;
+				}
+				Object rval = rhs.eval(store);
+				if (rval instanceof JmErrorStore) {
+					return false;
+				}
+				return ((IntVal) lval).num < ((IntVal) rval).num;
+			};
+		} else {
+			throw unsupported;
+		}
+	}
+}
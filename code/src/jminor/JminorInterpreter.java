@@ -11,18 +11,23 @@ import pexyn.Trace;
 /**
  * Interprets a program for a given store. The interpreter attempts to run even
  * on abstract programs (programs containing nonterminals) and may return the
- * top store if it cannot evaluate assignments or expressions.
+ * top store if it cannot evaluate assignments or expressions.<br>
+ * The evaluation state is kept in the fields of the interpreter, so an
+ * interpreter must not be shared by concurrent runs. Callers create an
+ * interpreter per run, which is cheap.
  * 
  * TODO: handle stores with garbage as erroneous by returning an error store.
  * 
  * @author romanm
  */
 public class JminorInterpreter extends JminorVisitor {
-	public static final JminorInterpreter v = new JminorInterpreter();
-
 	protected JmStore store;
 	protected boolean resultCond;
 	protected Val resultVal;
+	/**
+	 * The value held by the location overwritten by the last assignment.
+	 */
+	protected Val overwritten;
 	protected Field resulField;
 	protected RefType type;
 	protected Trace<JmStore, Stmt> trace;
@@ -85,6 +90,7 @@ public class JminorInterpreter extends JminorVisitor {
 		this.resultCond = false;
 		this.store = null;
 		this.resultVal = null;
+		this.overwritten = null;
 	}
 
 	protected void updateTrace(JmStore pre, JmStore post, Stmt label) {
@@ -170,7 +176,7 @@ public class JminorInterpreter extends JminorVisitor {
 		if (store instanceof JmErrorStore) {
 			return;
 		}
-		if (store.containsGarbage()) {
+		if (store.containsGarbage(pre, overwritten)) {
 			store = JmStore.error("memory leak!");
 		}
 	}
@@ -232,6 +238,7 @@ public class JminorInterpreter extends JminorVisitor {
 		Node lhs = n.getLhs();
 		if (lhs instanceof VarExpr) {
 			VarExpr lhsVar = (VarExpr) lhs;
+			overwritten = store.eval(lhsVar.getVar());
 			store = store.assign(lhsVar.getVar(), rval);
 		} else {
 			assert lhs instanceof DerefExpr;
@@ -245,6 +252,7 @@ public class JminorInterpreter extends JminorVisitor {
 				store = JmStore.error("illegal dereference of " + n.getLhs());
 				return;
 			}
+			overwritten = store.eval(lobj, lhsDeref.getField());
 			store = store.assign(lobj, lhsDeref.getField(), rval);
 		}
 	}
@@ -335,8 +343,9 @@ public class JminorInterpreter extends JminorVisitor {
 
 	@Override
 	public void visit(NewExpr n) {
-		var allocResult = store.allocate(n.getType());
+		var allocResult = store.nextFree(n.getType());
 		if (allocResult.isPresent()) {
+			store = store.allocate(allocResult.get());
 			resultVal = allocResult.get();
 		} else {
 			store = JmErrorStore.error("Allocation error, out of " + n.getType().getName() + " objects!");
@@ -54,8 +54,6 @@ public class JminorSemantics implements StructuredSemantics<JmStore, Stmt, BoolE
 	protected STGLoader templates = new STGLoader(JminorSemantics.class);
 	protected STHierarchyRenderer renderer = new STHierarchyRenderer(templates);
 
-	protected GuardCostEvaluator guardCostEvaluator = new GuardCostEvaluator();
-
 	@Override
 	public String name() {
 		return "JminorSemantics";
@@ -68,8 +66,7 @@ public class JminorSemantics implements StructuredSemantics<JmStore, Stmt, BoolE
 
 	@Override
 	public boolean test(BoolExpr expr, JmStore store) {
-		Boolean result = JminorInterpreter.v.test(expr, store);
-		return result != null && result.booleanValue();
+		return JminorCompiler.compile(expr).test(store);
 	}
 
 	@Override
@@ -99,12 +96,9 @@ public class JminorSemantics implements StructuredSemantics<JmStore, Stmt, BoolE
 	@Override
 	public Optional<JmStore> apply(Stmt stmt, JmStore store) {
 		Optional<JmStore> result = Optional.empty();
-		Collection<JmStore> succs = BasicJminorTR.applier.apply(store, stmt);
-		if (succs.size() == 1) {
-			JmStore next = succs.iterator().next();
-			if (!(next instanceof ErrorStore)) {
-				result = Optional.of(next);
-			}
+		JmStore next = JminorCompiler.compile(stmt).run(store);
+		if (!(next instanceof ErrorStore)) {
+			result = Optional.of(next);
 		}
 		return result;
 	}
@@ -361,7 +355,12 @@ public class JminorSemantics implements StructuredSemantics<JmStore, Stmt, BoolE
 		}
 	}
 
-	protected void addBasicIntGuards(List<Trace<JmStore, Stmt>> plans, List<BoolExpr> result) {
+	/**
+	 * Collects the integer expressions and constants from which the basic integer
+	 * guards are built.
+	 */
+	protected void collectBasicIntTerms(List<Trace<JmStore, Stmt>> plans, List<Expr> intExprs,
+			List<IntVal> intVals) {
 		// Collect all of the integers constants into a single set.
 		final var storeVals = collectIntValsFromStores(plans);
 		final var stmtVals = collectIntValsFromStmts(plans);
@@ -388,10 +387,10 @@ public class JminorSemantics implements StructuredSemantics<JmStore, Stmt, BoolE
 		// storeVals.add(max);
 		storeVals.add(new IntVal(0));
 		storeVals.add(new IntVal(1));
-		final var intVals = new HashSet<IntVal>(storeVals);
-		intVals.addAll(stmtVals);
+		final var vals = new HashSet<IntVal>(storeVals);
+		vals.addAll(stmtVals);
+		intVals.addAll(vals);
 
-		final var intExprs = new ArrayList<Expr>();
 		// Add variables and variable-field-dereference expressions as basic
 		// expressions.
 		for (final var domVar : vars) {
@@ -420,35 +419,6 @@ public class JminorSemantics implements StructuredSemantics<JmStore, Stmt, BoolE
 			}
 		}
 		intExprs.addAll(binaryIntExprs);
-
-		// Add less-than and equality guards from the integer-valued expressions.
-		for (int i = 0; i < intExprs.size(); ++i) {
-			var e1 = intExprs.get(i);
-			for (int j = 0; j < intExprs.size(); ++j) {
-				if (i == j) {
-					continue;
-				}
-				var e2 = intExprs.get(j);
-				final var lt1 = new LtExpr(e1, e2);
-				result.add(lt1);
-				final var lt2 = new LtExpr(e2, e1);
-				result.add(lt2);
-				// Since equality is symmetric, prune out useless
-				// guards.
-				if (i < j) {
-					final var eq = new EqExpr(e1, e2);
-					result.add(eq);
-				}
-			}
-			for (final var iv : intVals) {
-				final var lt1 = new LtExpr(e1, new ValExpr(iv));
-				result.add(lt1);
-				final var lt2 = new LtExpr(new ValExpr(iv), e1);
-				result.add(lt2);
-				final var eq = new EqExpr(e1, new ValExpr(iv));
-				result.add(eq);
-			}
-		}
 	}
 
 	/**
@@ -509,18 +479,19 @@ public class JminorSemantics implements StructuredSemantics<JmStore, Stmt, BoolE
 		}
 	}
 
+	/**
+	 * Returns the basic guards in non-decreasing order of cost, constructing them
+	 * on demand (see {@link BasicGuardEnumeration}).
+	 */
 	@Override
 	public List<BoolExpr> generateBasicGuards(List<Trace<JmStore, Stmt>> plans) {
-		final var result = new ArrayList<BoolExpr>();
-		addBasicIntGuards(plans, result);
-		addBasicBooleanGuards(plans, result);
-		addBasicRefGuards(plans, result);
-
-		Collections.sort(result, (e1, e2) -> {
-			var diff = guardCostEvaluator.apply(e1) - guardCostEvaluator.apply(e2);
-			return (int) diff;
-		});
-		return result;
+		final var intExprs = new ArrayList<Expr>();
+		final var intVals = new ArrayList<IntVal>();
+		collectBasicIntTerms(plans, intExprs, intVals);
+		final var otherGuards = new ArrayList<BoolExpr>();
+		addBasicBooleanGuards(plans, otherGuards);
+		addBasicRefGuards(plans, otherGuards);
+		return new BasicGuardEnumeration(this, intExprs, intVals, otherGuards);
 	}
 
 	@Override
@@ -608,13 +579,22 @@ public class JminorSemantics implements StructuredSemantics<JmStore, Stmt, BoolE
 
 	@Override
 	public float guardCost(BoolExpr guard) {
-		return guardCostEvaluator.apply(guard);
+		// The evaluator keeps its result in a field, so each call gets its own.
+		return new GuardCostEvaluator().apply(guard);
+	}
+
+	/**
+	 * Returns the cost of the given expression, which is its contribution to the
+	 * cost of the guards containing it.
+	 */
+	public float exprCost(Node expr) {
+		return new GuardCostEvaluator().apply(expr);
 	}
 
 	class GuardCostEvaluator extends JminorVisitor {
 		private float result;
 
-		public float apply(BoolExpr guard) {
+		public float apply(Node guard) {
 			result = 0;
 			guard.accept(this);
 			assert result != 0;
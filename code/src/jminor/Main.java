@@ -2,23 +2,36 @@ package jminor;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
+import org.apache.commons.configuration2.CompositeConfiguration;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.builder.fluent.Configurations;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 
 import bgu.cs.util.Timer;
+import bgu.cs.util.Union2;
 import jminor.ast.ASTProblem;
 import jminor.ast.JminorParser;
 import jminor.ast.ProblemCompiler;
 import jminor.codegen.AutomatonCodegen;
+import pexyn.Example;
 import pexyn.PETISynthesizer;
 import pexyn.StructuredSemantics;
+import pexyn.generalization.Automaton;
 import pexyn.generalization.AutomatonToStructuredCmd;
 import pexyn.planning.AStar;
+import pexyn.planning.BidirectionalPlanner;
+import pexyn.planning.CachingPlanner;
+import pexyn.planning.IDAStar;
+import pexyn.planning.ParallelAStar;
+import pexyn.planning.PlanCache;
+import pexyn.planning.Planner;
+import pexyn.planning.SearchBudget;
 
 /**
  * Synthesizes programs from a heap-format specification file.
@@ -31,6 +44,13 @@ public class Main {
 	private static final String OUTPUT_DIR_KEY = "pexyn.outputDir";
 	private static final String PROPERTIES_FILE_NAME = "pexyn.properties";
 
+	/**
+	 * The properties that only configure the A* planner, which the other planners
+	 * ignore, except for the bidirectional planner, which uses A* as its fallback.
+	 */
+	private static final List<String> ASTAR_PROPERTIES = List.of("pexyn.planning.compactClosedSet",
+			"jminor.heapSymmetryReduction", "pexyn.planning.partialOrderReduction");
+
 	private String outputDirPath = null;
 
 	private Timer synthesisTime = new Timer();
@@ -41,6 +61,12 @@ public class Main {
 
 	private JminorDebugger debugger = null;
 
+	/**
+	 * The statistics of the statements in synthesized programs, or null if they
+	 * are not used.
+	 */
+	private ActionStatistics actionStatistics = null;
+
 	private Configuration config = null;
 
 	private final String filename;
@@ -82,6 +108,14 @@ public class Main {
 		var configs = new Configurations();
 		try {
 			config = configs.properties(new File(PROPERTIES_FILE_NAME));
+			var specConfigFile = specPropertiesFile();
+			if (specConfigFile.exists()) {
+				// Properties given next to the specification override the global ones.
+				var composite = new CompositeConfiguration();
+				composite.addConfiguration(configs.properties(specConfigFile));
+				composite.addConfiguration(config);
+				config = composite;
+			}
 			outputDirPath = config.getString(OUTPUT_DIR_KEY, "./");
 			var dir = new File(outputDirPath);
 			outputDirPath = dir.getAbsolutePath();
@@ -97,12 +131,15 @@ public class Main {
 		planningTime.reset();
 		try {
 			var problem = genProblem();
+			if (config.getBoolean("jminor.denseStores", false)) {
+				useDenseStores(problem);
+			}
 			debugger = new JminorDebugger(config, logger, problem.name, outputDirPath);
 			debugger.addLink(logFile.getName(), "Events log");
 			debugger.addCodeFile("problem.txt", problem.toString(), "Specification");
 			debugger.printExamples(problem.examples);
 			synthesisTime.start();
-			var planner = new AStar<JmStore, Stmt>(new BasicJminorTR(problem.semantics));
+			var planner = createPlanner(problem);
 			var synthesizer = new PETISynthesizer<JmStore, Stmt, BoolExpr>(planner, config, logger, debugger);
 			var synthesisResult = synthesizer.synthesize(problem);
 			if (synthesisResult.success()) {
@@ -111,6 +148,9 @@ public class Main {
 				// since currently a command sequence is counted as an atomic
 				// command, which fails the tests.
 				var automaton = synthesisResult.get();
+				if (actionStatistics != null) {
+					recordActionStatistics(automaton);
+				}
 				if (config.getBoolean("pexyn.structureResultAutomaton", false)) {
 					new AutomatonToStructuredCmd<JmStore, Stmt, BoolExpr>(
 							(StructuredSemantics<JmStore, Stmt, BoolExpr>) problem.semantics()).compress(automaton);
@@ -138,6 +178,132 @@ public class Main {
 		}
 	}
 
+	/**
+	 * Replaces the input stores of the examples by equal dense stores, so that
+	 * plans and traces are computed over dense stores. The stores that follow the
+	 * input are only matched against, and stay as they are.
+	 */
+	private void useDenseStores(JminorProblem problem) {
+		List<JmStore> stores = new ArrayList<>();
+		for (var example : problem.examples) {
+			for (var step : example) {
+				if (step.isT1()) {
+					stores.add(step.getT1());
+				}
+			}
+		}
+		var layout = new DenseStore.Layout(problem.semantics, stores);
+		for (int i = 0; i < problem.examples.size(); ++i) {
+			var example = problem.examples.get(i);
+			List<Union2<JmStore, Stmt>> steps = new ArrayList<>();
+			for (var step : example) {
+				steps.add(steps.isEmpty() ? Union2.ofT1(layout.toDense(step.getT1())) : step);
+			}
+			var denseExample = new Example<JmStore, Stmt>(steps, example.id, example.name);
+			denseExample.isTest = example.isTest;
+			problem.examples.set(i, denseExample);
+		}
+	}
+
+	/**
+	 * Adds the statements of the given automaton to the action statistics, before
+	 * they are structured, and saves the statistics.
+	 */
+	private void recordActionStatistics(Automaton automaton) {
+		for (var state : automaton.getNodes()) {
+			for (var edge : automaton.succEdges(state)) {
+				actionStatistics.record((Stmt) edge.getLabel().update);
+			}
+		}
+		try {
+			actionStatistics.save();
+		} catch (IOException e) {
+			logger.warning("Unable to save action statistics: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the planner used to turn examples into plans.
+	 */
+	private Planner<JmStore, Stmt> createPlanner(JminorProblem problem) {
+		var tr = new BasicJminorTR(problem.semantics);
+		tr.setGoalRelevancePruning(config.getBoolean("jminor.goalRelevancePruning", false));
+		if (config.getBoolean("jminor.actionStatistics", false)) {
+			var statisticsFile = new File(config.getString(OUTPUT_DIR_KEY, "."), "action-statistics.txt");
+			actionStatistics = new ActionStatistics(statisticsFile);
+			tr.setActionStatistics(actionStatistics, config.getFloat("jminor.actionCostPenalty", 0));
+		}
+		var planner = createSearchPlanner(tr);
+		if (config.getBoolean("pexyn.planning.planCache", false)) {
+			var cacheDir = new File(config.getString(OUTPUT_DIR_KEY, "."), "plan-cache");
+			var cache = new PlanCache(cacheDir, config.getInt("pexyn.planning.planCacheSize", 10000));
+			planner = new CachingPlanner<JmStore, Stmt>(planner, config.getString("pexyn.planner", "astar"), tr,
+					new JmStoreCodec(problem.semantics), cache);
+		}
+		return planner;
+	}
+
+	/**
+	 * Creates the planner selected by the 'pexyn.planner' property.
+	 */
+	private Planner<JmStore, Stmt> createSearchPlanner(BasicJminorTR tr) {
+		var heuristic = config.getBoolean("jminor.storeDistanceHeuristic", true) ? new StoreDistanceHeuristic()
+				: null;
+		var budget = SearchBudget.fromConfig(config);
+		var astar = new AStar<JmStore, Stmt>(tr, heuristic);
+		astar.setBudget(budget);
+		if (config.getBoolean("pexyn.planning.compactClosedSet", false)) {
+			astar.setFingerprinter(JmStore::fingerprint);
+		}
+		if (config.getBoolean("jminor.heapSymmetryReduction", false)) {
+			astar.setStateEquivalence(new HeapSymmetry());
+		}
+		if (config.getBoolean("pexyn.planning.partialOrderReduction", false)) {
+			astar.setIndependence(new StmtIndependence(tr.actions()));
+		}
+		var plannerName = config.getString("pexyn.planner", "astar");
+		if (!plannerName.equals("astar")) {
+			for (var key : ASTAR_PROPERTIES) {
+				if (config.getBoolean(key, false)) {
+					logger.warning(key + " only applies to A*, so the " + plannerName + " planner "
+							+ (plannerName.equals("bidirectional") ? "only uses it for its fallback" : "ignores it"));
+				}
+			}
+		}
+		switch (plannerName) {
+		case "astar":
+			return astar;
+		case "bidirectional":
+			var bidirectional = new BidirectionalPlanner<JmStore, Stmt>(tr, astar);
+			bidirectional.setBudget(budget);
+			return bidirectional;
+		case "idastar":
+			var idastar = new IDAStar<JmStore, Stmt>(tr, heuristic,
+					config.getInt("pexyn.planning.transpositionTableSize", 100000));
+			idastar.setBudget(budget);
+			return idastar;
+		case "parallel":
+			var parallelism = config.getInt("pexyn.planning.parallelism", Runtime.getRuntime().availableProcessors());
+			var parallel = new ParallelAStar<JmStore, Stmt>(tr, heuristic, Math.max(1, parallelism));
+			parallel.setBudget(budget);
+			return parallel;
+		default:
+			throw new IllegalArgumentException("Unknown planner: " + plannerName);
+		}
+	}
+
+	/**
+	 * Returns the properties file of the specification, which has the name of the
+	 * specification file with the extension replaced by '.properties'.
+	 */
+	private File specPropertiesFile() {
+		var specFile = new File(filename);
+		var name = specFile.getName();
+		var dot = name.lastIndexOf('.');
+		var baseName = dot > 0 ? name.substring(0, dot) : name;
+		return new File(specFile.getAbsoluteFile().getParentFile(), baseName + ".properties");
+	}
+
 	private void setOutputDirectory() {
 		var outputDirProp = config.getString("pexyn.outputDir", "output");
 		var outputDirFile = new File(outputDirProp);
@@ -1,12 +1,19 @@
 package jminor;
 
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A heap object.
  * 
  * @author romanm
  */
 public class Obj extends Val {
-	private static int counter = 0;
+	/**
+	 * Allocates addresses, which keeps them unique when objects are created by
+	 * several threads.
+	 */
+	private static final AtomicInteger counter = new AtomicInteger();
 
 	/**
 	 * The constant null objects.
@@ -14,11 +21,14 @@ public class Obj extends Val {
 	public static final Obj NULL;
 
 	static {
-		counter = 0;
-
 		NULL = new Obj(NullType.v);
 	}
 
+	/**
+	 * Orders objects by their addresses.
+	 */
+	public static final Comparator<Obj> ADDRESS_ORDER = Comparator.comparingInt(o -> o.id);
+
 	/**
 	 * The type of this object.
 	 */
@@ -31,8 +41,7 @@ public class Obj extends Val {
 
 	public Obj(RefType type) {
 		this.type = type;
-		this.id = counter;
-		++counter;
+		this.id = counter.getAndIncrement();
 	}
 
 	@Override
@@ -0,0 +1,518 @@
+package jminor;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map implemented as a hash array mapped trie (HAMT). Updates
+ * return new maps, which copy only the path from the root to the updated entry
+ * and share the rest of the trie with the original map.<br>
+ * The shape of the trie depends only on the keys, so two maps are equal if and
+ * only if their tries are equal, and comparisons skip subtries that are shared
+ * by both maps. Every node caches the sum of the hash codes of its entries, so
+ * hash codes are computed in constant time.
+ *
+ * @author romanm
+ *
+ * @param <K>
+ *            The type of keys, which must not be null.
+ * @param <V>
+ *            The type of values, which must not be null.
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	@SuppressWarnings("rawtypes")
+	private static final PersistentMap EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0);
+
+	private final BitmapNode root;
+	private final int size;
+	private Set<Map.Entry<K, V>> entrySet;
+
+	private PersistentMap(BitmapNode root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentMap<K, V> empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Returns a persistent map with the entries of the given map, which is the
+	 * given map itself if it is already persistent.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentMap<K, V> from(Map<K, V> map) {
+		if (map instanceof PersistentMap) {
+			return (PersistentMap<K, V>) map;
+		}
+		PersistentMap<K, V> result = empty();
+		for (Map.Entry<K, V> entry : map.entrySet()) {
+			result = result.plus(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a map that maps the given key to the given value, and agrees with
+	 * this map on all other keys.
+	 */
+	public PersistentMap<K, V> plus(K key, V value) {
+		assert key != null && value != null;
+		Leaf leaf = new Leaf(key, value);
+		Object[] added = new Object[1];
+		BitmapNode newRoot = (BitmapNode) root.plus(leaf, 0, added);
+		if (newRoot == root) {
+			return this;
+		}
+		return new PersistentMap<>(newRoot, added[0] != null ? size + 1 : size);
+	}
+
+	/**
+	 * Returns a map that agrees with this map on all keys except for the given
+	 * key, which it does not map.
+	 */
+	public PersistentMap<K, V> minus(K key) {
+		Object result = root.minus(key, spread(key.hashCode()), 0);
+		if (result == root) {
+			return this;
+		} else if (result == null) {
+			return empty();
+		} else if (result instanceof Leaf) {
+			return new PersistentMap<>(BitmapNode.EMPTY.with((Leaf) result, 0), size - 1);
+		} else {
+			return new PersistentMap<>((BitmapNode) result, size - 1);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		if (key == null) {
+			return null;
+		}
+		int hash = spread(key.hashCode());
+		Object node = root;
+		for (int shift = 0;; shift += BITS) {
+			if (node instanceof BitmapNode) {
+				BitmapNode bitmapNode = (BitmapNode) node;
+				int bit = 1 << ((hash >>> shift) & MASK);
+				if ((bitmapNode.bitmap & bit) == 0) {
+					return null;
+				}
+				node = bitmapNode.slots[bitmapNode.index(bit)];
+			} else if (node instanceof Leaf) {
+				Leaf leaf = (Leaf) node;
+				return leaf.key.equals(key) ? (V) leaf.value : null;
+			} else {
+				Leaf leaf = ((CollisionNode) node).find(key);
+				return leaf != null ? (V) leaf.value : null;
+			}
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int hashCode() {
+		return root.entriesHash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o instanceof PersistentMap) {
+			PersistentMap<?, ?> other = (PersistentMap<?, ?>) o;
+			return size == other.size && root.entriesHash == other.root.entriesHash
+					&& equalNodes(root, other.root);
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Spreads the higher bits of the given hash code to the lower ones, which
+	 * select the slots near the root.
+	 */
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Compares two nodes of tries, which are at the same depth.
+	 */
+	private static boolean equalNodes(Object first, Object second) {
+		if (first == second) {
+			return true;
+		}
+		if (first instanceof Leaf && second instanceof Leaf) {
+			Leaf firstLeaf = (Leaf) first;
+			Leaf secondLeaf = (Leaf) second;
+			return firstLeaf.entryHash == secondLeaf.entryHash && firstLeaf.key.equals(secondLeaf.key)
+					&& firstLeaf.value.equals(secondLeaf.value);
+		}
+		if (first instanceof BitmapNode && second instanceof BitmapNode) {
+			BitmapNode firstNode = (BitmapNode) first;
+			BitmapNode secondNode = (BitmapNode) second;
+			if (firstNode.bitmap != secondNode.bitmap || firstNode.entriesHash != secondNode.entriesHash) {
+				return false;
+			}
+			for (int i = 0; i < firstNode.slots.length; ++i) {
+				if (!equalNodes(firstNode.slots[i], secondNode.slots[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (first instanceof CollisionNode && second instanceof CollisionNode) {
+			CollisionNode firstNode = (CollisionNode) first;
+			CollisionNode secondNode = (CollisionNode) second;
+			if (firstNode.leaves.length != secondNode.leaves.length) {
+				return false;
+			}
+			for (Leaf leaf : firstNode.leaves) {
+				Leaf other = secondNode.find(leaf.key);
+				if (other == null || !leaf.value.equals(other.value)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * An entry of the map.
+	 */
+	private static final class Leaf implements Map.Entry<Object, Object> {
+		public final Object key;
+		public final Object value;
+		public final int hash;
+
+		/**
+		 * The hash code of the entry, as defined by {@link Map.Entry#hashCode()}.
+		 */
+		public final int entryHash;
+
+		public Leaf(Object key, Object value) {
+			this.key = key;
+			this.value = value;
+			int keyHash = key.hashCode();
+			this.hash = spread(keyHash);
+			this.entryHash = keyHash ^ value.hashCode();
+		}
+
+		@Override
+		public Object getKey() {
+			return key;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int hashCode() {
+			return entryHash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+			return key.equals(other.getKey()) && value.equals(other.getValue());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+
+	/**
+	 * The base class of inner nodes of the trie.
+	 */
+	private static abstract class TrieNode {
+		/**
+		 * The sum of the hash codes of the entries below this node.
+		 */
+		public int entriesHash;
+
+		/**
+		 * Returns the node resulting from adding the given leaf below this node,
+		 * which is at the given depth, and records in 'added' whether the key is
+		 * new.
+		 */
+		public abstract TrieNode plus(Leaf leaf, int shift, Object[] added);
+
+		/**
+		 * Returns the result of removing the given key from below this node, which
+		 * is either this node, if the key is not there, another node, a leaf that
+		 * remains as the only entry, or null if no entries remain.
+		 */
+		public abstract Object minus(Object key, int hash, int shift);
+	}
+
+	/**
+	 * A node that maps 5 bits of the hash codes to leaves and sub-nodes, with an
+	 * array that has a slot for each bit set in the bitmap.
+	 */
+	private static final class BitmapNode extends TrieNode {
+		public static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+		public final int bitmap;
+		public final Object[] slots;
+
+		public BitmapNode(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+			int sum = 0;
+			for (Object slot : slots) {
+				sum += slot instanceof Leaf ? ((Leaf) slot).entryHash : ((TrieNode) slot).entriesHash;
+			}
+			this.entriesHash = sum;
+		}
+
+		public int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		/**
+		 * Returns a node with the given leaf added to a free slot.
+		 */
+		public BitmapNode with(Leaf leaf, int shift) {
+			int bit = 1 << ((leaf.hash >>> shift) & MASK);
+			int index = index(bit);
+			Object[] newSlots = new Object[slots.length + 1];
+			System.arraycopy(slots, 0, newSlots, 0, index);
+			newSlots[index] = leaf;
+			System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+			return new BitmapNode(bitmap | bit, newSlots);
+		}
+
+		private BitmapNode replace(int index, Object slot) {
+			Object[] newSlots = slots.clone();
+			newSlots[index] = slot;
+			return new BitmapNode(bitmap, newSlots);
+		}
+
+		@Override
+		public TrieNode plus(Leaf leaf, int shift, Object[] added) {
+			int bit = 1 << ((leaf.hash >>> shift) & MASK);
+			if ((bitmap & bit) == 0) {
+				added[0] = leaf;
+				return with(leaf, shift);
+			}
+			int index = index(bit);
+			Object slot = slots[index];
+			if (slot instanceof Leaf) {
+				Leaf existing = (Leaf) slot;
+				if (existing.key.equals(leaf.key)) {
+					if (existing.value == leaf.value || existing.value.equals(leaf.value)) {
+						return this;
+					}
+					return replace(index, leaf);
+				}
+				added[0] = leaf;
+				return replace(index, merge(existing, leaf, shift + BITS));
+			}
+			TrieNode child = (TrieNode) slot;
+			TrieNode newChild = child.plus(leaf, shift + BITS, added);
+			return newChild == child ? this : replace(index, newChild);
+		}
+
+		@Override
+		public Object minus(Object key, int hash, int shift) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((bitmap & bit) == 0) {
+				return this;
+			}
+			int index = index(bit);
+			Object slot = slots[index];
+			Object newSlot;
+			if (slot instanceof Leaf) {
+				if (!((Leaf) slot).key.equals(key)) {
+					return this;
+				}
+				newSlot = null;
+			} else {
+				newSlot = ((TrieNode) slot).minus(key, hash, shift + BITS);
+				if (newSlot == slot) {
+					return this;
+				}
+			}
+
+			if (newSlot != null) {
+				BitmapNode result = replace(index, newSlot);
+				// Keep the trie canonical by inlining a single remaining leaf.
+				return shift > 0 && slots.length == 1 && newSlot instanceof Leaf ? newSlot : result;
+			}
+			if (slots.length == 1) {
+				return null;
+			}
+			if (shift > 0 && slots.length == 2 && slots[1 - index] instanceof Leaf) {
+				return slots[1 - index];
+			}
+			Object[] newSlots = new Object[slots.length - 1];
+			System.arraycopy(slots, 0, newSlots, 0, index);
+			System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+			return new BitmapNode(bitmap & ~bit, newSlots);
+		}
+
+		/**
+		 * Returns a node holding two leaves with distinct keys, at the given depth.
+		 */
+		private static TrieNode merge(Leaf first, Leaf second, int shift) {
+			if (shift >= Integer.SIZE) {
+				return new CollisionNode(first.hash, new Leaf[] { first, second });
+			}
+			int firstBit = 1 << ((first.hash >>> shift) & MASK);
+			int secondBit = 1 << ((second.hash >>> shift) & MASK);
+			if (firstBit == secondBit) {
+				return new BitmapNode(firstBit, new Object[] { merge(first, second, shift + BITS) });
+			}
+			Object[] newSlots = Integer.compareUnsigned(firstBit, secondBit) < 0 ? new Object[] { first, second }
+					: new Object[] { second, first };
+			return new BitmapNode(firstBit | secondBit, newSlots);
+		}
+	}
+
+	/**
+	 * A node holding the leaves whose keys have the same hash.
+	 */
+	private static final class CollisionNode extends TrieNode {
+		public final int hash;
+		public final Leaf[] leaves;
+
+		public CollisionNode(int hash, Leaf[] leaves) {
+			this.hash = hash;
+			this.leaves = leaves;
+			int sum = 0;
+			for (Leaf leaf : leaves) {
+				sum += leaf.entryHash;
+			}
+			this.entriesHash = sum;
+		}
+
+		public Leaf find(Object key) {
+			for (Leaf leaf : leaves) {
+				if (leaf.key.equals(key)) {
+					return leaf;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public TrieNode plus(Leaf leaf, int shift, Object[] added) {
+			for (int i = 0; i < leaves.length; ++i) {
+				if (leaves[i].key.equals(leaf.key)) {
+					if (leaves[i].value.equals(leaf.value)) {
+						return this;
+					}
+					Leaf[] newLeaves = leaves.clone();
+					newLeaves[i] = leaf;
+					return new CollisionNode(hash, newLeaves);
+				}
+			}
+			added[0] = leaf;
+			Leaf[] newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+			newLeaves[leaves.length] = leaf;
+			return new CollisionNode(hash, newLeaves);
+		}
+
+		@Override
+		public Object minus(Object key, int hash, int shift) {
+			for (int i = 0; i < leaves.length; ++i) {
+				if (leaves[i].key.equals(key)) {
+					if (leaves.length == 2) {
+						return leaves[1 - i];
+					}
+					Leaf[] newLeaves = new Leaf[leaves.length - 1];
+					System.arraycopy(leaves, 0, newLeaves, 0, i);
+					System.arraycopy(leaves, i + 1, newLeaves, i, leaves.length - i - 1);
+					return new CollisionNode(hash, newLeaves);
+				}
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Iterates over the leaves of the trie in depth-first order.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		private final Deque<Object> stack = new ArrayDeque<>();
+
+		public EntryIterator() {
+			stack.push(root);
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!stack.isEmpty() && !(stack.peek() instanceof Leaf)) {
+				Object node = stack.pop();
+				Object[] children = node instanceof BitmapNode ? ((BitmapNode) node).slots
+						: ((CollisionNode) node).leaves;
+				for (int i = children.length - 1; i >= 0; --i) {
+					stack.push(children[i]);
+				}
+			}
+			return !stack.isEmpty();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Map.Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return (Map.Entry<K, V>) stack.pop();
+		}
+	}
+}
@@ -16,6 +16,12 @@ import pexyn.Semantics.Cmd;
 public abstract class Stmt extends Node implements Cmd {
 	protected final List<Node> args;
 
+	/**
+	 * The compiled form of this statement (see {@link JminorCompiler}), or null
+	 * if it has not been compiled yet.
+	 */
+	JminorCompiler.CompiledStmt compiled;
+
 	@Override
 	public final List<Node> getArgs() {
 		return args;
@@ -25,7 +31,7 @@ public abstract class Stmt extends Node implements Cmd {
 	 * Tests whether this statement can be applied to the given store.
 	 */
 	public boolean enabled(JmStore store) {
-		JmStore result = JminorInterpreter.v.run(this, store, JminorInterpreter.v.guessMaxSteps(this, store)).get();
+		JmStore result = JminorCompiler.compile(this).run(store);
 		return !(result instanceof JmStore.JmErrorStore);
 	}
 
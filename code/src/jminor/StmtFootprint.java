@@ -0,0 +1,78 @@
+package jminor;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import bgu.cs.util.treeGrammar.Node;
+
+/**
+ * The locations read and written by an assignment. Variables are locations,
+ * and so are fields, which stand for that field of every object, since
+ * distinct fields never alias.<br>
+ * Overwriting a reference may turn objects into garbage, which disables
+ * assignments that leak memory, so all assignments that write references
+ * write a shared pseudo-location, and allocations read and write the set of
+ * free objects.
+ *
+ * @author romanm
+ */
+class StmtFootprint {
+	/**
+	 * The pseudo-location standing for the set of objects reachable from the
+	 * variables.
+	 */
+	public static final Object REACHABILITY = "<reachability>";
+
+	/**
+	 * The pseudo-location standing for the set of free objects.
+	 */
+	public static final Object FREE_OBJECTS = "<free objects>";
+
+	public final Set<Object> reads = new HashSet<>();
+	public final Set<Object> writes = new HashSet<>();
+
+	public StmtFootprint(AssignStmt assign) {
+		Node lhs = assign.getLhs();
+		if (lhs instanceof VarExpr) {
+			Var lvar = ((VarExpr) lhs).getVar();
+			writes.add(lvar);
+			if (lvar instanceof RefVar) {
+				writes.add(REACHABILITY);
+			}
+		} else {
+			DerefExpr lhsDeref = (DerefExpr) lhs;
+			addReads(lhsDeref.getLhs());
+			Field lfield = lhsDeref.getField();
+			writes.add(lfield);
+			if (lfield instanceof RefField) {
+				writes.add(REACHABILITY);
+			}
+		}
+		addReads(assign.getRhs());
+	}
+
+	/**
+	 * Tests whether this footprint writes a location accessed by the given one.
+	 */
+	public boolean conflicts(StmtFootprint other) {
+		return !Collections.disjoint(writes, other.reads) || !Collections.disjoint(writes, other.writes);
+	}
+
+	private void addReads(Node n) {
+		if (n instanceof VarExpr) {
+			reads.add(((VarExpr) n).getVar());
+		} else if (n instanceof DerefExpr) {
+			DerefExpr deref = (DerefExpr) n;
+			reads.add(deref.getField());
+			addReads(deref.getLhs());
+		} else if (n instanceof NewExpr) {
+			reads.add(FREE_OBJECTS);
+			writes.add(FREE_OBJECTS);
+		} else if (n instanceof Expr) {
+			for (Node sub : n.getArgs()) {
+				addReads(sub);
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package jminor;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import pexyn.planning.Independence;
+
+/**
+ * An independence relation over assignment statements, which is derived from
+ * the locations they read and write (see {@link StmtFootprint}). Two
+ * assignments are independent if neither writes a location that the other one
+ * reads or writes. Statements other than assignments depend on every
+ * statement.
+ *
+ * @author romanm
+ */
+public class StmtIndependence implements Independence<Stmt> {
+	private final Map<Stmt, StmtFootprint> footprints = new HashMap<>();
+
+	/**
+	 * Constructs the relation for the given statements. The footprints of other
+	 * statements are computed on demand.
+	 */
+	public StmtIndependence(Collection<Stmt> stmts) {
+		for (Stmt stmt : stmts) {
+			footprint(stmt);
+		}
+	}
+
+	@Override
+	public boolean independent(Stmt first, Stmt second) {
+		if (first == second) {
+			return false;
+		}
+		StmtFootprint firstFootprint = footprint(first);
+		StmtFootprint secondFootprint = footprint(second);
+		if (firstFootprint == null || secondFootprint == null) {
+			return false;
+		}
+		return !firstFootprint.conflicts(secondFootprint) && !secondFootprint.conflicts(firstFootprint);
+	}
+
+	/**
+	 * Returns the footprint of the given statement or null if it is not an
+	 * assignment.
+	 */
+	private synchronized StmtFootprint footprint(Stmt stmt) {
+		if (!(stmt instanceof AssignStmt)) {
+			return null;
+		}
+		StmtFootprint result = footprints.get(stmt);
+		if (result == null) {
+			result = new StmtFootprint((AssignStmt) stmt);
+			footprints.put(stmt, result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,46 @@
+package jminor;
+
+import java.util.Map;
+
+import pexyn.planning.GoalHeuristic;
+
+/**
+ * Estimates the distance between a store and a goal store by the number of
+ * variables and fields whose values do not match the goal (see
+ * {@link JminorSemantics#match(JmStore, JmStore)}).<br>
+ * A basic statement updates at most one variable or field, except for an
+ * allocation, which also sets all fields of the allocated object to their
+ * default values. Fields of objects that are yet to be allocated are therefore
+ * only counted if the goal gives them other values, which takes a separate
+ * statement for each field, and the estimate is admissible and consistent for
+ * transitions whose costs are at least 1.
+ *
+ * @author romanm
+ */
+public class StoreDistanceHeuristic implements GoalHeuristic<JmStore> {
+	@Override
+	public float estimate(JmStore store, JmStore goal) {
+		int mismatches = 0;
+		for (Map.Entry<Var, Val> entry : goal.getEnvMap().entrySet()) {
+			Var var = entry.getKey();
+			if (!store.isInitialized(var) || !store.eval(var).equals(entry.getValue())) {
+				++mismatches;
+			}
+		}
+
+		for (Obj obj : goal.getObjects()) {
+			boolean free = store.freeObjects.contains(obj);
+			for (Map.Entry<Field, Val> entry : goal.geFields(obj).entrySet()) {
+				Field field = entry.getKey();
+				if (free) {
+					if (!field.getDefaultVal().equals(entry.getValue())) {
+						++mismatches;
+					}
+				} else if (!store.isInitialized(obj, field) || !store.eval(obj, field).equals(entry.getValue())) {
+					++mismatches;
+				}
+			}
+		}
+		return mismatches;
+	}
+}
@@ -0,0 +1,208 @@
+package pexyn;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pexyn.Semantics.Guard;
+import pexyn.Semantics.Store;
+
+/**
+ * Remembers the results of testing guards on stores, which guard inference and
+ * automaton interpretation repeat many times for the same guards and stores.
+ * Stores are interned to indices, and the results for each guard are kept as a
+ * row of two bit sets over the store indices, one for the evaluated stores and
+ * one for the stores satisfying the guard.<br>
+ * Stores are interned by value, so that equal stores that were created
+ * separately, e.g., by replaying the examples, share their results. Guards are
+ * interned by identity, since the callers test the same guard objects over and
+ * over, and hashing and comparing guards structurally costs more than testing
+ * them.<br>
+ * Memory is bounded by the maximal number of stores, which bounds the length
+ * of the rows, and the maximal total number of bits in the rows. When there are
+ * too many stores, the least recently used store is dropped and its index is
+ * cleared in all rows and reused, and when there are too many bits, the least
+ * recently used rows are dropped.<br>
+ * Only looking up and recording results is synchronized, so that guards are
+ * tested concurrently by concurrent callers.
+ *
+ * @author romanm
+ *
+ * @param <StoreType>
+ *            The type of stores in the underlying semantics.
+ * @param <GuardType>
+ *            The type of guards in the underlying semantics.
+ */
+public class GuardEvaluationCache<StoreType extends Store, GuardType extends Guard> {
+	private final Semantics<StoreType, ?, GuardType> semantics;
+
+	private final int maxStores;
+
+	private final long maxBits;
+
+	/**
+	 * The indices of the stores, from the least to the most recently used.
+	 */
+	private final LinkedHashMap<StoreType, Integer> storeToIndex = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The indices of dropped stores, which are free for reuse.
+	 */
+	private final Deque<Integer> freeIndices = new ArrayDeque<>();
+
+	private final Map<GuardType, Row> guardToRow = new IdentityHashMap<>();
+
+	/**
+	 * The rows, from the least to the most recently used.
+	 */
+	private final LinkedHashMap<Row, Row> rows = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The total number of bits in the rows.
+	 */
+	private long bits = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * Constructs an empty cache.
+	 *
+	 * @param maxStores
+	 *            The maximal number of stores with remembered results.
+	 * @param maxBits
+	 *            The maximal total number of bits used to remember results.
+	 */
+	public GuardEvaluationCache(Semantics<StoreType, ?, GuardType> semantics, int maxStores, long maxBits) {
+		assert maxStores > 0 && maxBits > 0;
+		this.semantics = semantics;
+		this.maxStores = maxStores;
+		this.maxBits = maxBits;
+	}
+
+	/**
+	 * Tests whether the given guard holds for the given store, consulting the
+	 * semantics only for pairs that have not been tested before.
+	 */
+	public boolean test(GuardType guard, StoreType store) {
+		synchronized (this) {
+			Integer index = storeToIndex.get(store);
+			Row row = rowOf(guard);
+			if (index != null && row != null && row.evaluated.get(index)) {
+				++hits;
+				return row.holds.get(index);
+			}
+			++misses;
+		}
+		boolean result = semantics.test(guard, store);
+		record(guard, store, result);
+		return result;
+	}
+
+	/**
+	 * Remembers the result of testing the given guard on the given store.
+	 */
+	private synchronized void record(GuardType guard, StoreType store, boolean result) {
+		Integer index = storeToIndex.get(store);
+		if (index == null) {
+			if (storeToIndex.size() == maxStores) {
+				dropEldestStore();
+			}
+			index = freeIndices.isEmpty() ? storeToIndex.size() : freeIndices.pop();
+			storeToIndex.put(store, index);
+		}
+		Row row = rowOf(guard);
+		if (row == null) {
+			row = new Row(guard);
+			guardToRow.put(guard, row);
+			rows.put(row, row);
+		}
+		bits -= row.bits();
+		row.evaluated.set(index);
+		row.holds.set(index, result);
+		bits += row.bits();
+		dropEldestRows(row);
+	}
+
+	/**
+	 * Returns the row of the given guard, or null if it has none, and marks it as
+	 * the most recently used row.
+	 */
+	private Row rowOf(GuardType guard) {
+		Row row = guardToRow.get(guard);
+		if (row != null) {
+			rows.get(row);
+		}
+		return row;
+	}
+
+	/**
+	 * Drops the least recently used store, clearing its index in all rows.
+	 */
+	private void dropEldestStore() {
+		Iterator<Integer> eldest = storeToIndex.values().iterator();
+		int index = eldest.next();
+		eldest.remove();
+		for (Row row : guardToRow.values()) {
+			row.evaluated.clear(index);
+			row.holds.clear(index);
+		}
+		freeIndices.push(index);
+	}
+
+	/**
+	 * Drops the least recently used rows, other than the given one, until the
+	 * rows fit in the maximal number of bits.
+	 */
+	private void dropEldestRows(Row keep) {
+		Iterator<Row> iter = rows.keySet().iterator();
+		while (bits > maxBits && iter.hasNext()) {
+			Row row = iter.next();
+			if (row != keep) {
+				bits -= row.bits();
+				guardToRow.remove(row.guard);
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * The number of tests answered from the cache.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * The number of tests passed to the semantics.
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * The results of a guard on the indexed stores. Rows are compared by
+	 * identity.
+	 */
+	private class Row {
+		final GuardType guard;
+		final BitSet evaluated = new BitSet();
+		final BitSet holds = new BitSet();
+
+		Row(GuardType guard) {
+			this.guard = guard;
+		}
+
+		/**
+		 * The number of bits allocated for the row.
+		 */
+		long bits() {
+			return evaluated.size() + holds.size();
+		}
+	}
+}
@@ -21,6 +21,7 @@ import pexyn.generalization.AutomatonInterpreter;
 import pexyn.generalization.Result;
 import pexyn.guardInference.ConditionInferencer;
 import pexyn.guardInference.DTreeInferencer;
+import pexyn.guardInference.GuardEnumeration;
 import pexyn.generalization.PETI;
 import pexyn.planning.Planner;
 
@@ -47,6 +48,12 @@ public class PETISynthesizer<StoreType extends Store, CmdType extends Cmd, Guard
 	private final GPDebugger<StoreType, CmdType, GuardType> debugger;
 	private final Logger logger;
 
+	/**
+	 * Remembers the results of guard tests across guard inference and testing,
+	 * or null if guards are always tested by the semantics.
+	 */
+	private GuardEvaluationCache<StoreType, GuardType> evaluationCache = null;
+
 	public PETISynthesizer(Planner<StoreType, CmdType> planner, Configuration config, Logger logger,
 			GPDebugger<StoreType, CmdType, GuardType> debugger) {
 		assert planner != null;
@@ -66,27 +73,45 @@ public class PETISynthesizer<StoreType extends Store, CmdType extends Cmd, Guard
 			}
 		});
 
+		if (config.getBoolean("pexyn.guardEvaluationCache", false)) {
+			evaluationCache = new GuardEvaluationCache<>(problem.semantics(),
+					config.getInt("pexyn.guardEvaluationCacheStores", 10000),
+					config.getLong("pexyn.guardEvaluationCacheMegabytes", 64) * 8 * 1024 * 1024);
+		}
+
 		ConditionInferencer<StoreType, CmdType, GuardType> separator;
 		var shortCiruitEvaluationSemantics = config.getBoolean("pexyn.shortCiruitEvaluationSemantics", true);
 		var basicGuards = problem.semantics().generateBasicGuards(trainingPlans);
-		separator = new DTreeInferencer<StoreType, CmdType, GuardType>(problem.semantics(), basicGuards,
+		var dtree = new DTreeInferencer<StoreType, CmdType, GuardType>(problem.semantics(), basicGuards,
 				shortCiruitEvaluationSemantics);
-		debugPrintGuards(separator.guards());
+		dtree.setEvaluationCache(evaluationCache);
+		dtree.setParallelism(Math.max(1, config.getInt("pexyn.guardInferenceParallelism", 1)));
+		separator = dtree;
 
 		logger.info("Generalizing " + trainingPlans.size() + " plans...");
 		var learner = new PETI<StoreType, CmdType, GuardType>(problem.semantics(), separator, debugger, logger);
 		var learningTime = new Timer();
 		learningTime.start();
-		var learningResult = learner.infer(trainingPlans);
+		Result learningResult;
+		try {
+			learningResult = learner.infer(trainingPlans);
+		} finally {
+			dtree.shutdown();
+		}
 		learningTime.stop();
 		logger.info("Automaton learning time: " + learningTime.toSeconds());
 		logger.info("Automaton learning result = " + learningResult.type);
+		debugPrintGuards(separator.guards());
 		if (learningResult.success()) {
 			var inferredAutomaton = learningResult.get();
 			var comparisonResult = compareOnTestExamples(exampleToPlan, inferredAutomaton, problem);
 			var synthesisResultStr = comparisonResult ? "success" : "failure";
 			logger.info("Synthesis result = " + synthesisResultStr);
 		}
+		if (evaluationCache != null) {
+			logger.info("Guard evaluation cache: " + evaluationCache.hits() + " hits, " + evaluationCache.misses()
+					+ " misses");
+		}
 		return learningResult;
 	}
 
@@ -145,6 +170,7 @@ public class PETISynthesizer<StoreType extends Store, CmdType extends Cmd, Guard
 			}
 			++numOfTests;
 			var interpreter = new AutomatonInterpreter<StoreType, CmdType, GuardType>(automaton, problem.semantics());
+			interpreter.setEvaluationCache(evaluationCache);
 			var optAutomatonTrace = interpreter.genTrace(example.input(), maxTraceLength);
 			if (!optAutomatonTrace.isPresent() || !optAutomatonTrace.get().eqDeterministic(plan)) {
 				{
@@ -177,10 +203,20 @@ public class PETISynthesizer<StoreType extends Store, CmdType extends Cmd, Guard
 		debugger.printAutomaton(diffAutomaton.get(), "Difference on example " + description);
 	}
 
+	/**
+	 * Prints the given guards, which, for a {@link GuardEnumeration}, are only
+	 * the guards that were constructed, so printing does not construct the rest.
+	 */
 	protected void debugPrintGuards(Collection<GuardType> guards) {
 		final var maxGuardPrintCount = config.getInt("pexyn.printGuardCountBound", -1);
 		var txt = new StringBuilder();
 		txt.append("#guards=" + guards.size());
+		if (guards instanceof GuardEnumeration) {
+			@SuppressWarnings("unchecked")
+			var enumeration = (GuardEnumeration<GuardType>) guards;
+			guards = enumeration.generated();
+			txt.append(" (" + guards.size() + " constructed)");
+		}
 		txt.append("\n=============\n");
 		var guardCounter = 0;
 		for (var guard : guards) {
@@ -8,6 +8,7 @@ import jminor.JmStore.JmErrorStore;
 import pexyn.Semantics.Guard;
 import pexyn.Semantics.Cmd;
 import pexyn.Semantics.Store;
+import pexyn.planning.Goal;
 import pexyn.planning.Planner;
 import pexyn.planning.SearchResultType;
 
@@ -40,9 +41,9 @@ public class PlanningUtils {
 			Union2<StoreType, CmdType> step = example.steps.get(i);
 			if (step.isT1()) {
 				var stateGoal = step.getT1();
-				SearchResultType planResult = planner.findPlan(current, state -> {
+				SearchResultType planResult = planner.findPlan(current, Goal.of(stateGoal, state -> {
 					return semantics.match(state, stateGoal);
-				}, plan);
+				}), plan);
 				switch (planResult) {
 				case OK:
 					current = plan.lastState();
@@ -54,7 +55,9 @@ public class PlanningUtils {
 					return Optional.empty();
 				case OUT_OF_RESOURCES:
 					if (logger != null) {
-						logger.info("Timed out on example " + example.name + "! Skipping example.");
+						var resource = planner.exhaustedResource().map(Object::toString).orElse("unknown");
+						logger.info("Planning for example " + example.name + " exceeded its " + resource
+								+ " budget! Skipping example.");
 					}
 					return Optional.empty();
 				}
@@ -72,7 +72,10 @@ public interface Semantics<StoreType extends Store, CmdType extends Cmd, GuardTy
 	public List<GuardType> generateGuards(List<Trace<StoreType, CmdType>> plans);
 
 	/**
-	 * Returns a list of likely atomic predicates for the given plans.
+	 * Returns a list of likely atomic predicates for the given plans, in
+	 * non-decreasing order of {@link #guardCost}. Guard inference stops
+	 * scoring the predicates once their costs are too high to improve on the best
+	 * predicate found, so it relies on this order.
 	 */
 	public List<GuardType> generateBasicGuards(List<Trace<StoreType, CmdType>> plans);
 
@@ -4,6 +4,7 @@ import java.util.Optional;
 
 import bgu.cs.util.graph.MultiGraph.Edge;
 import pexyn.ArrayListTrace;
+import pexyn.GuardEvaluationCache;
 import pexyn.Semantics;
 import pexyn.LoadedInterpreter;
 import pexyn.Trace;
@@ -29,11 +30,24 @@ public class AutomatonInterpreter<StoreType extends Store, CmdType extends Cmd,
 	private final Semantics<StoreType, CmdType, GuardType> semantics;
 	private Trace<StoreType, CmdType> trace;
 
+	/**
+	 * Remembers the results of guard tests, or null if guards are always tested
+	 * by the semantics.
+	 */
+	private GuardEvaluationCache<StoreType, GuardType> evaluationCache = null;
+
 	public AutomatonInterpreter(Automaton automaton, Semantics<StoreType, CmdType, GuardType> semantics) {
 		this.automaton = automaton;
 		this.semantics = semantics;
 	}
 
+	/**
+	 * Makes guard tests consult the given cache.
+	 */
+	public void setEvaluationCache(GuardEvaluationCache<StoreType, GuardType> evaluationCache) {
+		this.evaluationCache = evaluationCache;
+	}
+
 	@Override
 	public Optional<StoreType> run(StoreType input, int maxSteps) {
 		var currState = automaton.getInitial();
@@ -46,7 +60,9 @@ public class AutomatonInterpreter<StoreType extends Store, CmdType extends Cmd,
 				var action = edge.getLabel();
 				@SuppressWarnings("unchecked")
 				var guard = (GuardType) action.guard();
-				if (semantics.test(guard, currValue)) {
+				boolean holds = evaluationCache != null ? evaluationCache.test(guard, currValue)
+						: semantics.test(guard, currValue);
+				if (holds) {
 					matchedAction = action;
 					matchedEdge = edge;
 					break;
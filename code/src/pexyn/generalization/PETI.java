@@ -214,7 +214,10 @@ public class PETI<StoreType extends Store, CmdType extends Cmd, GuardType extend
 	}
 
 	/**
-	 * Attempts to assign a guards to every action on a split state.
+	 * Attempts to assign a guards to every action on a split state.<br>
+	 * Guards are inferred afresh after every round of merges. A merged state pools
+	 * the stores of its constituents, so the classification problems of a round
+	 * rarely repeat those of earlier rounds, and remembering them does not pay off.
 	 * 
 	 * @return If a guard was able to be found for every action on a split state.
 	 */
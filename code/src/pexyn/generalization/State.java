@@ -60,7 +60,10 @@ public class State {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode();
+		// Hashing by the identifier, rather than by identity, keeps the iteration
+		// order of states independent of the identity hashes that the JVM assigns,
+		// which vary between runs when other threads are active.
+		return id.hashCode();
 	}
 
 	@Override
@@ -1,14 +1,23 @@
 package pexyn.guardInference;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import bgu.cs.util.rel.HashRel2;
 import bgu.cs.util.rel.Rel2;
+import pexyn.GuardEvaluationCache;
 import pexyn.Semantics;
 import pexyn.Semantics.Cmd;
 import pexyn.Semantics.Guard;
@@ -16,8 +25,38 @@ import pexyn.Semantics.Store;
 
 /**
  * A guard inference based on ID3. The main difference is that the algorithm
- * takes into account the cost of guards (not just their gain).
- * 
+ * takes into account the cost of guards (not just their gain).<br>
+ * The labelled examples are numbered, and each proposition is tested once on
+ * each example, when it is first needed, yielding a bit set of the examples
+ * satisfying it. Each label is also represented by the bit set of its examples,
+ * and each tree node by the bit set of the examples that reach it, so the
+ * counts needed for the entropies of splits are computed by intersecting bit
+ * sets, without further tests.<br>
+ * With a parallelism above 1, the propositions are scored by a fork/join
+ * reduction, which keeps the first of the best scoring propositions, as the
+ * sequential scan does, and the two subtrees of each node are built
+ * concurrently, so the inferred guards do not depend on the parallelism. The
+ * reduction runs over one batch of propositions at a time, where the first
+ * batch is a single range and each following batch doubles, up to a range per
+ * thread, so that the bound below applies between batches.<br>
+ * The propositions are expected in non-decreasing order of cost, as returned by
+ * {@link Semantics#generateBasicGuards(List)}. The order of a list of
+ * propositions is checked when the inferencer is constructed, and lists that
+ * are out of order are sorted, while a {@link GuardEnumeration}, which is
+ * ordered by construction, is checked as the costs of its propositions are
+ * computed, since computing them all up front would construct all of its
+ * guards.<br>
+ * Since the gain of a split is at most the entropy of the node, the scan of the
+ * propositions stops at the first proposition whose cost cannot yield a better
+ * score, e.g., right after a split that leaves no entropy, and the remaining
+ * propositions are neither tested nor, for a {@link GuardEnumeration},
+ * constructed. In parallel, at most the rest of the current batch is scored
+ * past that proposition.<br>
+ * A proposition that holds for exactly the same examples as an earlier
+ * proposition, i.e., has the same bit set, is not scored, since it splits every
+ * node as the earlier proposition does and costs at least as much, and can
+ * therefore only tie with it.
+ *
  * @author romanm
  *
  * @param <ExampleType>
@@ -26,7 +65,7 @@ import pexyn.Semantics.Store;
  *            The type of class labels.
  * @param <FeatureType>
  *            The type of (Boolean) features.
- * 
+ *
  * @TODO Make this class generic: separate from Cmd and other domain related
  *       type parameters.
  */
@@ -41,17 +80,101 @@ public class DTreeInferencer<ExampleType extends Store, LabelType extends Cmd, F
 
 	private final boolean shortCiruitEvaluationSemantics;
 
+	/**
+	 * The costs of the propositions, by their indices, or NaN for propositions
+	 * whose cost was not computed yet.
+	 */
+	private final float[] costs;
+
+	/**
+	 * Remembers the results of guard tests, or null if guards are always tested
+	 * by the domain.
+	 */
+	private GuardEvaluationCache<ExampleType, FeatureType> evaluationCache = null;
+
+	/**
+	 * The number of propositions below which a range of propositions is scored
+	 * sequentially.
+	 */
+	private static final int SEQUENTIAL_PROPOSITIONS = 256;
+
+	/**
+	 * The pool that builds trees, or null if trees are built by the calling
+	 * thread.
+	 */
+	private ForkJoinPool pool = null;
+
 	public DTreeInferencer(Semantics<ExampleType, LabelType, FeatureType> domain, List<FeatureType> propositions,
 			boolean shortCiruitEvaluationSemantics) {
-		this.propositions = propositions;
+		this.propositions = orderedByCost(domain, propositions);
 		this.domain = domain;
 		this.shortCiruitEvaluationSemantics = shortCiruitEvaluationSemantics;
+		this.costs = new float[propositions.size()];
+		Arrays.fill(costs, Float.NaN);
+	}
+
+	/**
+	 * Returns the given propositions in non-decreasing order of cost, where
+	 * propositions of equal cost keep their order. Enumerations are returned as
+	 * they are.
+	 */
+	private static <FeatureType extends Guard> List<FeatureType> orderedByCost(Semantics<?, ?, FeatureType> domain,
+			List<FeatureType> propositions) {
+		if (propositions instanceof GuardEnumeration) {
+			return propositions;
+		}
+		var costs = new HashMap<FeatureType, Float>();
+		float previous = Float.NEGATIVE_INFINITY;
+		boolean ordered = true;
+		for (var proposition : propositions) {
+			float cost = domain.guardCost(proposition);
+			costs.put(proposition, cost);
+			ordered &= cost >= previous;
+			previous = cost;
+		}
+		if (ordered) {
+			return propositions;
+		}
+		var result = new ArrayList<>(propositions);
+		result.sort(Comparator.comparing(costs::get));
+		return result;
+	}
+
+	/**
+	 * Makes guard tests consult the given cache.
+	 */
+	public void setEvaluationCache(GuardEvaluationCache<ExampleType, FeatureType> evaluationCache) {
+		this.evaluationCache = evaluationCache;
+	}
+
+	/**
+	 * Sets the number of threads that build trees, where 1 means that trees are
+	 * built by the calling thread.
+	 */
+	public void setParallelism(int parallelism) {
+		assert parallelism > 0;
+		if (pool != null) {
+			pool.shutdown();
+		}
+		pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+
+	/**
+	 * Stops the threads that build trees, after which trees are built by the
+	 * calling thread.
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
 	}
 
 	@Override
 	public Optional<Map<Cmd, ? extends Guard>> infer(Rel2<Cmd, Store> updateToValue) {
-		Node root = new Node(updateToValue);
-		var foundTree = splitNode(root);
+		var table = new TruthTable(updateToValue);
+		Node root = table.root();
+		var foundTree = pool != null ? pool.invoke(ForkJoinTask.adapt(() -> splitNode(root))) : splitNode(root);
 		if (foundTree) {
 			var result = generateAllClassifiers(root, updateToValue.all1());
 			return Optional.of(result);
@@ -62,7 +185,7 @@ public class DTreeInferencer<ExampleType extends Store, LabelType extends Cmd, F
 
 	/**
 	 * Generates a Boolean expression from the tree for each label.
-	 * 
+	 *
 	 * @param root
 	 *            A decision tree.
 	 * @param updates
@@ -126,7 +249,7 @@ public class DTreeInferencer<ExampleType extends Store, LabelType extends Cmd, F
 
 	/**
 	 * Computes the classifier at the given node.
-	 * 
+	 *
 	 * @return true if refinement succeeded (all leaves are pure) and false
 	 *         otherwise.
 	 */
@@ -139,6 +262,11 @@ public class DTreeInferencer<ExampleType extends Store, LabelType extends Cmd, F
 				return false;
 			}
 			populateNode(root, optSplitter.get());
+			if (pool != null) {
+				var posTask = ForkJoinTask.adapt(() -> splitNode(root.pos)).fork();
+				var negSubTreeSuccessfullyBuilt = splitNode(root.neg);
+				return posTask.join() && negSubTreeSuccessfullyBuilt;
+			}
 			var subTreeSuccessfullyBuilt = splitNode(root.pos);
 			if (!subTreeSuccessfullyBuilt) {
 				return false;
@@ -156,66 +284,295 @@ public class DTreeInferencer<ExampleType extends Store, LabelType extends Cmd, F
 		return propositions;
 	}
 
-	protected Optional<FeatureType> findBestSplitter(Node n) {
-		var updateToValue = n.labelToExample;
-		var bestScore = 0f;
-		FeatureType bestGuard = null;
-		for (FeatureType guard : propositions) {
-			var entropyForGuardPos = entropyOnSplit(updateToValue, guard, true);
-			var entropyForGuardNeg = entropyOnSplit(updateToValue, guard, false);
-			// This is expensive: optimize.
-			var posRatio = (float) countSplitterMatches(n.labelToExample, guard, true) / n.labelToExample.size();
+	/**
+	 * Returns the index of the proposition with the best ratio of gain to cost at
+	 * the given node, if any proposition has a positive gain.
+	 */
+	protected Optional<Integer> findBestSplitter(Node n) {
+		Split best;
+		if (pool != null && propositions.size() > SEQUENTIAL_PROPOSITIONS) {
+			best = new Split(0f, -1);
+			int maxBatch = pool.getParallelism() * SEQUENTIAL_PROPOSITIONS;
+			int batch = SEQUENTIAL_PROPOSITIONS;
+			for (int from = 0; from < propositions.size() && n.entropy / cost(from) > best.score; from += batch) {
+				if (from > 0) {
+					batch = Math.min(2 * batch, maxBatch);
+				}
+				int to = Math.min(from + batch, propositions.size());
+				var batchBest = new SplitterSearch(n, from, to, best.score).invoke();
+				if (batchBest.index >= 0) {
+					best = batchBest;
+				}
+			}
+		} else {
+			best = findBestSplitter(n, 0, propositions.size(), 0f);
+		}
+		if (best.index >= 0) {
+			return Optional.of(best.index);
+		} else {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Returns the first of the propositions in the given range with the best
+	 * score above the given bound at the given node, or a split with index -1 if
+	 * no proposition scores above the bound.
+	 */
+	private Split findBestSplitter(Node n, int from, int to, float bound) {
+		var bestScore = bound;
+		int bestIndex = -1;
+		int numLabels = n.labels.length;
+		int[] posCounts = new int[numLabels];
+		int[] negCounts = new int[numLabels];
+		for (int i = from; i < to; ++i) {
+			var cost = cost(i);
+			if (n.entropy / cost <= bestScore) {
+				// No proposition from here on can have a higher score.
+				break;
+			}
+			long[] column = n.table.column(i);
+			if (n.table.redundant(i)) {
+				continue;
+			}
+			int posTotal = 0;
+			for (int j = 0; j < numLabels; ++j) {
+				posCounts[j] = countAnd(n.labelRows[j], column);
+				negCounts[j] = n.labelCounts[j] - posCounts[j];
+				posTotal += posCounts[j];
+			}
+			var entropyForGuardPos = entropy(posCounts, posTotal);
+			var entropyForGuardNeg = entropy(negCounts, n.size - posTotal);
+			var posRatio = (float) posTotal / n.size;
 			var entropyReductionFromPos = entropyForGuardPos * posRatio;
 			var entropyReductionFromNeg = entropyForGuardNeg * (1 - posRatio);
 			var gain = n.entropy - entropyReductionFromPos - entropyReductionFromNeg;
-			var score = gain / (float) domain.guardCost(guard);
+			var score = gain / cost;
 			if (score > bestScore) {
 				bestScore = score;
-				bestGuard = guard;
+				bestIndex = i;
 			}
 		}
+		return new Split(bestScore, bestIndex);
+	}
 
-		if (bestGuard != null) {
-			return Optional.ofNullable(bestGuard);
-		} else {
-			return Optional.empty();
+	/**
+	 * A proposition and its score at a node.
+	 */
+	private static class Split {
+		final float score;
+		final int index;
+
+		Split(float score, int index) {
+			this.score = score;
+			this.index = index;
 		}
 	}
 
 	/**
-	 * Populates the sub-nodes of the given node with the given splitter.
+	 * Finds the best splitter in a range of propositions by halving the range
+	 * until it is small enough to be scored sequentially. The best splitter of
+	 * the second half replaces that of the first only if its score is strictly
+	 * higher, so the result is that of a sequential scan. The second half is
+	 * skipped when its cheapest proposition cannot score above the bound.
 	 */
-	protected void populateNode(Node node, FeatureType splitter) {
-		node.splitter = splitter;
-		var posVals = new HashRel2<Cmd, Store>();
-		var negVals = new HashRel2<Cmd, Store>();
-		for (var updateValue : node.labelToExample.all()) {
-			var update = updateValue.first;
-			var value = updateValue.second;
-			@SuppressWarnings("unchecked")
-			boolean holds = domain.test(splitter, (ExampleType) value);
-			if (holds) {
-				posVals.add(update, value);
-			} else {
-				negVals.add(update, value);
+	private class SplitterSearch extends RecursiveTask<Split> {
+		private static final long serialVersionUID = 1L;
+
+		private final Node node;
+		private final int from;
+		private final int to;
+
+		/**
+		 * The score that a splitter must exceed.
+		 */
+		private final float bound;
+
+		SplitterSearch(Node node, int from, int to, float bound) {
+			this.node = node;
+			this.from = from;
+			this.to = to;
+			this.bound = bound;
+		}
+
+		@Override
+		protected Split compute() {
+			if (to - from <= SEQUENTIAL_PROPOSITIONS) {
+				return findBestSplitter(node, from, to, bound);
+			}
+			int middle = (from + to) >>> 1;
+			if (node.entropy / cost(middle) <= bound) {
+				return new SplitterSearch(node, from, middle, bound).compute();
 			}
+			var second = new SplitterSearch(node, middle, to, bound);
+			second.fork();
+			var firstBest = new SplitterSearch(node, from, middle, bound).compute();
+			var secondBest = second.join();
+			return secondBest.score > firstBest.score ? secondBest : firstBest;
+		}
+	}
+
+	/**
+	 * Populates the sub-nodes of the given node with the proposition of the given
+	 * index.
+	 */
+	protected void populateNode(Node node, int splitterIndex) {
+		node.splitter = propositions.get(splitterIndex);
+		long[] column = node.table.column(splitterIndex);
+		long[] posRows = new long[node.rows.length];
+		long[] negRows = new long[node.rows.length];
+		for (int i = 0; i < posRows.length; ++i) {
+			posRows[i] = node.rows[i] & column[i];
+			negRows[i] = node.rows[i] & ~column[i];
+		}
+		node.pos = new Node(node.table, posRows);
+		node.neg = new Node(node.table, negRows);
+	}
+
+	/**
+	 * The bit sets of a set of labelled examples, where example i is represented
+	 * by bit i % 64 of word i / 64.
+	 */
+	class TruthTable {
+		/**
+		 * The labels of the examples.
+		 */
+		final List<Cmd> labels;
+
+		/**
+		 * The examples of each label, by the index of the label.
+		 */
+		final long[][] labelRows;
+
+		/**
+		 * The labelled examples, by their indices.
+		 */
+		final List<ExampleType> examples;
+
+		/**
+		 * The examples satisfying each proposition, by the index of the proposition,
+		 * or null for propositions that were not tested yet.
+		 */
+		final AtomicReferenceArray<long[]> columns;
+
+		/**
+		 * All examples.
+		 */
+		final long[] allRows;
+
+		/**
+		 * The index of the first tested proposition satisfied by each set of
+		 * examples.
+		 */
+		final Map<BitSet, Integer> firstWithColumn = new ConcurrentHashMap<>();
+
+		/**
+		 * The index of the first tested proposition satisfied by the same examples,
+		 * by the index of each tested proposition. An entry is set before the column
+		 * of its proposition is published.
+		 */
+		final int[] representatives;
+
+		@SuppressWarnings("unchecked")
+		TruthTable(Rel2<Cmd, Store> updateToValue) {
+			examples = new ArrayList<>(updateToValue.size());
+			List<Integer> exampleLabels = new ArrayList<>(updateToValue.size());
+			Map<Cmd, Integer> labelToIndex = new HashMap<>();
+			labels = new ArrayList<>();
+			for (var updateValue : updateToValue.all()) {
+				var label = labelToIndex.get(updateValue.first);
+				if (label == null) {
+					label = labels.size();
+					labelToIndex.put(updateValue.first, label);
+					labels.add(updateValue.first);
+				}
+				examples.add((ExampleType) updateValue.second);
+				exampleLabels.add(label);
+			}
+
+			int words = (examples.size() + 63) / 64;
+			allRows = new long[words];
+			labelRows = new long[labels.size()][words];
+			for (int i = 0; i < examples.size(); ++i) {
+				allRows[i >> 6] |= 1L << i;
+				labelRows[exampleLabels.get(i)][i >> 6] |= 1L << i;
+			}
+			columns = new AtomicReferenceArray<>(propositions.size());
+			representatives = new int[propositions.size()];
+		}
+
+		/**
+		 * Returns the examples satisfying the proposition of the given index, testing
+		 * it on all examples on first use. Threads that test the same proposition
+		 * concurrently compute the same bit set, so the first one is kept.
+		 */
+		long[] column(int proposition) {
+			long[] result = columns.get(proposition);
+			if (result == null) {
+				var guard = propositions.get(proposition);
+				result = new long[allRows.length];
+				for (int i = 0; i < examples.size(); ++i) {
+					if (test(guard, examples.get(i))) {
+						result[i >> 6] |= 1L << i;
+					}
+				}
+				representatives[proposition] = firstWithColumn.merge(BitSet.valueOf(result), proposition, Math::min);
+				if (!columns.compareAndSet(proposition, null, result)) {
+					result = columns.get(proposition);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Tests whether the tested proposition of the given index holds for the same
+		 * examples as an earlier proposition. Propositions that are tested
+		 * concurrently may both be considered as not redundant.
+		 */
+		boolean redundant(int proposition) {
+			return representatives[proposition] < proposition;
+		}
+
+		Node root() {
+			return new Node(this, allRows);
 		}
-		var posNode = new Node(posVals);
-		var negNode = new Node(negVals);
-		node.pos = posNode;
-		node.neg = negNode;
 	}
 
 	/**
 	 * A decision tree node.
-	 * 
+	 *
 	 * @author romanm
 	 */
 	public class Node {
+		final TruthTable table;
+
 		/**
-		 * The subset of labeled values that need to be classified at this node.
+		 * The subset of labelled examples that need to be classified at this node.
 		 */
-		Rel2<Cmd, Store> labelToExample;
+		final long[] rows;
+
+		/**
+		 * The number of examples at this node.
+		 */
+		final int size;
+
+		/**
+		 * The indices of the labels of the examples at this node, in the iteration
+		 * order of a hash set of the labels.
+		 */
+		final int[] labels;
+
+		/**
+		 * The examples of each label at this node, by the position of the label in
+		 * {@link #labels}.
+		 */
+		final long[][] labelRows;
+
+		/**
+		 * The number of examples of each label at this node, by the position of the
+		 * label in {@link #labels}.
+		 */
+		final int[] labelCounts;
 
 		/**
 		 * The basic proposition used to split the values at this node into the
@@ -224,21 +581,48 @@ public class DTreeInferencer<ExampleType extends Store, LabelType extends Cmd, F
 		public FeatureType splitter;
 
 		/**
-		 * The node into which the subset of value that satisfy the splitter are sent.
+		 * The node into which the subset of value that satisfy the splitter are
+		 * sent.
 		 */
 		public Node pos;
 
 		/**
-		 * The node into which the subset of value that do not satisfy the splitter are
-		 * sent.
+		 * The node into which the subset of value that do not satisfy the splitter
+		 * are sent.
 		 */
 		public Node neg;
 
 		public final float entropy;
 
-		public Node(Rel2<Cmd, Store> updateToValue) {
-			this.labelToExample = updateToValue;
-			this.entropy = entropyOnSplit(updateToValue, domain.getTrue(), true);
+		Node(TruthTable table, long[] rows) {
+			this.table = table;
+			this.rows = rows;
+			// Entropies are summed in the order of a hash set of the labels, so
+			// that they are computed exactly as by counting with hash maps.
+			var present = new HashSet<Cmd>();
+			for (int l = 0; l < table.labels.size(); ++l) {
+				if (countAnd(rows, table.labelRows[l]) > 0) {
+					present.add(table.labels.get(l));
+				}
+			}
+			labels = new int[present.size()];
+			labelRows = new long[labels.length][];
+			labelCounts = new int[labels.length];
+			int total = 0;
+			int j = 0;
+			for (var label : present) {
+				int l = table.labels.indexOf(label);
+				labels[j] = l;
+				labelRows[j] = new long[rows.length];
+				for (int i = 0; i < rows.length; ++i) {
+					labelRows[j][i] = rows[i] & table.labelRows[l][i];
+				}
+				labelCounts[j] = countAnd(rows, table.labelRows[l]);
+				total += labelCounts[j];
+				++j;
+			}
+			size = total;
+			entropy = DTreeInferencer.entropy(labelCounts, size);
 		}
 
 		public boolean leaf() {
@@ -246,9 +630,8 @@ public class DTreeInferencer<ExampleType extends Store, LabelType extends Cmd, F
 		}
 
 		public boolean pure() {
-			assert labelToExample.size() > 0;
-			int uniqueKeys = new HashSet<Cmd>(labelToExample.all1()).size();
-			return uniqueKeys == 1;
+			assert size > 0;
+			return labels.length == 1;
 		}
 
 		/**
@@ -256,61 +639,60 @@ public class DTreeInferencer<ExampleType extends Store, LabelType extends Cmd, F
 		 */
 		public Cmd pureLabel() {
 			assert pure();
-			var result = labelToExample.all1().iterator().next();
-			return result;
+			return table.labels.get(labels[0]);
 		}
 	}
 
-	private int countSplitterMatches(Rel2<Cmd, Store> vals, FeatureType splitter, boolean polarity) {
-		var result = 0;
-		for (var pair : vals.all()) {
-			@SuppressWarnings("unchecked")
-			ExampleType val = (ExampleType) pair.second;
-			boolean holds = domain.test(splitter, val);
-			if (holds == polarity) {
-				++result;
+	/**
+	 * Returns the cost of the proposition of the given index. Threads that compute
+	 * the same cost concurrently store the same value.<br>
+	 * Each cost is compared with the costs of the neighbouring propositions that
+	 * were already computed, so every pair of neighbours is checked once both
+	 * costs are known.
+	 *
+	 * @throws IllegalStateException
+	 *             If the propositions are not ordered by cost.
+	 */
+	private float cost(int proposition) {
+		float result = costs[proposition];
+		if (Float.isNaN(result)) {
+			result = domain.guardCost(propositions.get(proposition));
+			// Comparisons with NaN, for costs that are not computed yet, are false.
+			if (proposition > 0 && result < costs[proposition - 1]
+					|| proposition + 1 < costs.length && result > costs[proposition + 1]) {
+				throw new IllegalStateException("Propositions are not ordered by cost!");
 			}
+			costs[proposition] = result;
 		}
 		return result;
 	}
 
+	private boolean test(FeatureType guard, ExampleType example) {
+		return evaluationCache != null ? evaluationCache.test(guard, example) : domain.test(guard, example);
+	}
+
 	/**
-	 * TODO: Use Trove maps to improve efficiency.
-	 * 
-	 * @param vals
-	 * @param splitter
-	 * @return
+	 * Returns the number of bits set in both bit sets.
 	 */
-	private float entropyOnSplit(Rel2<Cmd, Store> vals, FeatureType splitter, boolean polarity) {
-		var labelToNumPos = new HashMap<Cmd, Integer>();
-		int totalValsForSplitter = 0;
-		for (var label : vals.all1()) {
-			labelToNumPos.put(label, 0);
-		}
-
-		// Compute the proportions for each label.
-		for (var pair : vals.all()) {
-			@SuppressWarnings("unchecked")
-			ExampleType val = (ExampleType) pair.second;
-			boolean holds = domain.test(splitter, val);
-			if (!polarity) {
-				holds = !holds;
-			}
-			if (holds) {
-				var label = pair.first;
-				labelToNumPos.put(label, labelToNumPos.get(label) + 1);
-				++totalValsForSplitter;
-			}
+	private static int countAnd(long[] first, long[] second) {
+		int result = 0;
+		for (int i = 0; i < first.length; ++i) {
+			result += Long.bitCount(first[i] & second[i]);
 		}
+		return result;
+	}
 
+	/**
+	 * Returns the entropy of the given label counts, which sum to the given total.
+	 */
+	private static float entropy(int[] labelCounts, int total) {
 		float entropy = 0;
-		for (Map.Entry<Cmd, Integer> labelCount : labelToNumPos.entrySet()) {
-			int numPos = labelCount.getValue();
+		for (int numPos : labelCounts) {
 			if (numPos == 0) {
 				// Zero entropy.
 				continue;
 			}
-			float proportionOfClass = (float) numPos / (float) totalValsForSplitter;
+			float proportionOfClass = (float) numPos / (float) total;
 			entropy -= proportionOfClass * log2(proportionOfClass);
 		}
 		return entropy;
@@ -0,0 +1,55 @@
+package pexyn.guardInference;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import pexyn.Semantics.Guard;
+
+/**
+ * A list of guards in non-decreasing order of cost, whose guards are
+ * constructed on demand, one cost level at a time. Consumers that stop at
+ * cheap guards, such as {@link DTreeInferencer}, therefore never construct the
+ * expensive ones. The size of the list is known in advance.
+ *
+ * @author romanm
+ *
+ * @param <GuardType>
+ *            The type of guards in the list.
+ */
+public abstract class GuardEnumeration<GuardType extends Guard> extends AbstractList<GuardType> {
+	private final List<GuardType> generated = new ArrayList<>();
+
+	private final int size;
+
+	protected GuardEnumeration(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Appends the guards of the next cost level to the given list.
+	 */
+	protected abstract void generateNextLevel(List<GuardType> result);
+
+	@Override
+	public synchronized GuardType get(int index) {
+		Objects.checkIndex(index, size);
+		while (generated.size() <= index) {
+			generateNextLevel(generated);
+		}
+		return generated.get(index);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the guards constructed so far.
+	 */
+	public synchronized List<GuardType> generated() {
+		return new ArrayList<>(generated);
+	}
+}
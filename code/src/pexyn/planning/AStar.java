@@ -3,10 +3,15 @@ package pexyn.planning;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Predicate;
 
-import bgu.cs.util.BucketHeap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 import pexyn.ArrayListTrace;
 import pexyn.Trace;
 
@@ -26,11 +31,114 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 	 */
 	protected TR<StateType, ActionType> tr;
 
+	/**
+	 * An optional heuristic, which is used for goals given by a target state.
+	 */
+	protected final GoalHeuristic<StateType> heuristic;
+
+	/**
+	 * Bounds the resources consumed by each search.
+	 */
+	protected SearchBudget budget = SearchBudget.UNBOUNDED;
+
+	/**
+	 * The resource exhausted by the last search or null if the search ran to
+	 * completion.
+	 */
+	protected SearchBudget.Resource exhausted;
+
+	/**
+	 * When set, the search keeps only the fingerprints of closed states (see
+	 * {@link #setFingerprinter(Fingerprinter)}).
+	 */
+	protected Fingerprinter<StateType> fingerprinter;
+
+	/**
+	 * When set, the search identifies states by their keys (see
+	 * {@link #setStateEquivalence(StateEquivalence)}).
+	 */
+	protected StateEquivalence<StateType> equivalence;
+
+	/**
+	 * When set, the search prunes transitions by sleep sets (see
+	 * {@link #setIndependence(Independence)}).
+	 */
+	protected Independence<ActionType> independence;
+
 	/**
 	 * Constructs an instance of the algorithm for the given transition system.
 	 */
 	public AStar(TR<StateType, ActionType> tr) {
+		this(tr, null);
+	}
+
+	/**
+	 * Constructs an instance of the algorithm for the given transition system,
+	 * which uses the given heuristic for goals of type {@link Goal}.
+	 */
+	public AStar(TR<StateType, ActionType> tr, GoalHeuristic<StateType> heuristic) {
 		this.tr = tr;
+		this.heuristic = heuristic;
+	}
+
+	/**
+	 * Sets the bounds on the resources consumed by each search.
+	 */
+	public void setBudget(SearchBudget budget) {
+		assert budget != null;
+		this.budget = budget;
+	}
+
+	/**
+	 * Makes the search keep full states only for the nodes on the open list, and
+	 * remember closed states by their fingerprints. Closed nodes keep just the
+	 * action and the parent that lead to them, and plans are reconstructed by
+	 * replaying their actions from the initial state.<br>
+	 * Closed states are not reopened, so the plans are optimal only for
+	 * consistent heuristics, and a fingerprint collision may prune a state that
+	 * was never explored.
+	 * 
+	 * @param fingerprinter
+	 *            The fingerprint function or null to keep all states.
+	 */
+	public void setFingerprinter(Fingerprinter<StateType> fingerprinter) {
+		this.fingerprinter = fingerprinter;
+	}
+
+	/**
+	 * Makes the search explore one state out of every class of equivalent states.
+	 * Each node keeps the first state of its class that is reached by the
+	 * cheapest known path, so plans consist of actual states.<br>
+	 * The equivalence does not apply to searches that remember closed states by
+	 * their fingerprints, which identify states by the fingerprint function.
+	 * 
+	 * @param equivalence
+	 *            The state equivalence or null to identify only equal states.
+	 */
+	public void setStateEquivalence(StateEquivalence<StateType> equivalence) {
+		this.equivalence = equivalence;
+	}
+
+	/**
+	 * Makes the search prune interleavings of independent actions by sleep sets.
+	 * Each node keeps the set of actions that need not be taken from it, since
+	 * taking them first leads to states that are reached by other paths with the
+	 * same actions. A closed node that is reached with fewer sleeping actions is
+	 * reopened, so every reachable state is still reached, and the plans remain
+	 * optimal when the cost of a transition depends only on its action.<br>
+	 * Sleep sets do not apply to searches that remember closed states by their
+	 * fingerprints.
+	 * 
+	 * @param independence
+	 *            The independence relation or null to take all enabled actions.
+	 */
+	public void setIndependence(Independence<ActionType> independence) {
+		this.independence = independence;
+	}
+
+	@Override
+	public Optional<SearchBudget.Resource> exhaustedResource() {
+		return Optional.ofNullable(exhausted);
 	}
 
 	@Override
@@ -40,6 +148,8 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 		if (resultNode != null) {
 			createPath(resultNode, addToPlan);
 			return SearchResultType.OK;
+		} else if (exhausted != null) {
+			return SearchResultType.OUT_OF_RESOURCES;
 		} else {
 			return SearchResultType.NO_SOLUTION_EXISTS;
 		}
@@ -48,10 +158,12 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 	@Override
 	public SearchResult<StateType> findState(StateType initial, Predicate<StateType> goalTest) {
 		Node<StateType, ActionType> goalNode = searchNode(initial, goalTest);
-		if (goalNode == null) {
-			return SearchResult.noSolutionExists();
-		} else {
+		if (goalNode != null) {
 			return SearchResult.of(goalNode.state);
+		} else if (exhausted != null) {
+			return SearchResult.outOfResources();
+		} else {
+			return SearchResult.noSolutionExists();
 		}
 	}
 
@@ -62,17 +174,28 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 	 *            The initial state.
 	 * @param goalTest
 	 *            The predicate expressing the goal states.
-	 * @return The resulting search node or null if no plan exists.
+	 * @return The resulting search node or null if no plan exists or the budget
+	 *         has been exhausted, in which case the exhausted resource is
+	 *         recorded in 'exhausted'.
 	 */
 	protected Node<StateType, ActionType> searchNode(StateType initial, Predicate<StateType> goalTest) {
-		Map<StateType, Node<StateType, ActionType>> stateToNode = new HashMap<>();
-		BucketHeap<Float, Node<StateType, ActionType>> open = new BucketHeap<>();
+		if (fingerprinter != null) {
+			return searchNodeCompact(initial, goalTest);
+		}
+		Map<Object, Node<StateType, ActionType>> stateToNode = new HashMap<>();
+		IndexedHeap<Node<StateType, ActionType>> open = new IndexedHeap<>();
+		StateType target = Goal.targetOf(goalTest);
+		TR<StateType, ActionType> goalTR = target != null ? tr.forGoal(target) : tr;
+		SearchBudget.Meter meter = budget.start();
+		long expanded = 0;
+		exhausted = null;
 
 		Node<StateType, ActionType> startstate = new Node<>(initial, null);
-		stateToNode.put(initial, startstate);
+		stateToNode.put(stateKey(initial, target), startstate);
 		startstate.gscore = 0;
-		startstate.fscore = tr.estimateDistToGoal(initial);
-		open.put(startstate.fscore, startstate);
+		startstate.hscore = estimateDistToGoal(initial, target);
+		startstate.fscore = startstate.hscore;
+		open.put(startstate, startstate.fscore, startstate.hscore);
 
 		while (!open.isEmpty()) {
 			Node<StateType, ActionType> current = open.pop();
@@ -84,33 +207,173 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 			}
 
 			current.closed = true;
+			++expanded;
+			exhausted = meter.exhausted(expanded, stateToNode.size());
+			if (exhausted != null) {
+				return null;
+			}
 
-			for (ActionType action : tr.enabledActions(currentState)) {
-				for (StateType nextState : tr.apply(currentState, action)) {
-					Node<StateType, ActionType> neighborNode = stateToNode.get(nextState);
-					if (neighborNode == null) {
-						// This is a never before seen state.
-						neighborNode = new Node<>(nextState, current);
-						float tentativeGScore = current.gscore + tr.transitionCost(currentState, action, nextState);
-						neighborNode.parent = current;
-						neighborNode.computedFrom = action;
-						neighborNode.gscore = tentativeGScore;
-						neighborNode.fscore = tentativeGScore + tr.estimateDistToGoal(nextState);
-						open.put(neighborNode.gscore, neighborNode);
-						stateToNode.put(nextState, neighborNode);
-					} else {
-						if (neighborNode.closed)
-							continue;
-						float tentativeGScore = current.gscore + tr.transitionCost(currentState, action, nextState);
-						if (tentativeGScore >= neighborNode.gscore)
+			// The actions taken from the current node, which are put to sleep in
+			// the successors of the actions that are taken later.
+			List<ActionType> taken = new ArrayList<>();
+			Set<ActionType> nextSleep = Collections.emptySet();
+			for (Transition<StateType, ActionType> transition : goalTR.successors(currentState)) {
+				ActionType action = transition.action;
+				if (current.sleep.contains(action)) {
+					continue;
+				}
+				if (independence != null && (taken.isEmpty() || taken.get(taken.size() - 1) != action)) {
+					nextSleep = sleepAfter(current.sleep, taken, action);
+					taken.add(action);
+				}
+				StateType nextState = transition.state;
+				float tentativeGScore = current.gscore + transition.cost;
+				Object nextKey = stateKey(nextState, target);
+				Node<StateType, ActionType> neighborNode = stateToNode.get(nextKey);
+				if (neighborNode == null) {
+					// This is a never before seen state.
+					neighborNode = new Node<>(nextState, current);
+					neighborNode.sleep = nextSleep;
+					neighborNode.parent = current;
+					neighborNode.computedFrom = action;
+					neighborNode.gscore = tentativeGScore;
+					neighborNode.hscore = estimateDistToGoal(nextState, target);
+					neighborNode.fscore = tentativeGScore + neighborNode.hscore;
+					open.put(neighborNode, neighborNode.fscore, neighborNode.hscore);
+					stateToNode.put(nextKey, neighborNode);
+				} else {
+					boolean woken = wake(neighborNode, nextSleep);
+					if (neighborNode.closed) {
+						if (!woken)
 							continue;
-						neighborNode.parent = current;
-						neighborNode.computedFrom = action;
-						neighborNode.gscore = tentativeGScore;
-						neighborNode.fscore = tentativeGScore + tr.estimateDistToGoal(nextState);
-						open.put(neighborNode.gscore, neighborNode);
+						// Reopen the node to take the actions that woke up.
+						neighborNode.closed = false;
+						open.put(neighborNode, neighborNode.fscore, neighborNode.hscore);
 					}
+					if (tentativeGScore >= neighborNode.gscore)
+						continue;
+					// The state is replaced along with the path, since an
+					// equivalent state may differ from the one reached before.
+					neighborNode.state = nextState;
+					neighborNode.parent = current;
+					neighborNode.computedFrom = action;
+					neighborNode.gscore = tentativeGScore;
+					neighborNode.fscore = tentativeGScore + neighborNode.hscore;
+					// Decrease the key of the node, which is still on the open list.
+					open.put(neighborNode, neighborNode.fscore, neighborNode.hscore);
+				}
+			}
+		}
+
+		// The search has failed. No solution exists.
+		return null;
+	}
+
+	/**
+	 * Returns the sleep set of the successors reached by the given action from a
+	 * node with the given sleep set, after the given actions have been taken from
+	 * that node: the sleeping and taken actions that are independent of the given
+	 * action.
+	 */
+	protected Set<ActionType> sleepAfter(Set<ActionType> sleep, List<ActionType> taken, ActionType action) {
+		if (independence == null) {
+			return Collections.emptySet();
+		}
+		Set<ActionType> result = new HashSet<>();
+		for (ActionType other : sleep) {
+			if (independence.independent(action, other)) {
+				result.add(other);
+			}
+		}
+		for (ActionType other : taken) {
+			if (independence.independent(action, other)) {
+				result.add(other);
+			}
+		}
+		return result.isEmpty() ? Collections.emptySet() : result;
+	}
+
+	/**
+	 * Restricts the sleep set of the given node to the given sleep set, and
+	 * returns true if some of its actions woke up.
+	 */
+	private boolean wake(Node<StateType, ActionType> node, Set<ActionType> sleep) {
+		if (node.sleep.isEmpty() || sleep.containsAll(node.sleep)) {
+			return false;
+		}
+		Set<ActionType> result = new HashSet<>(node.sleep);
+		result.retainAll(sleep);
+		node.sleep = result.isEmpty() ? Collections.emptySet() : result;
+		return true;
+	}
+
+	/**
+	 * A variant of {@link #searchNode(Object, Predicate)} that keeps the
+	 * fingerprints of closed states instead of the states themselves. The stored
+	 * states accounted for by the budget are the ones on the open list.
+	 */
+	protected Node<StateType, ActionType> searchNodeCompact(StateType initial, Predicate<StateType> goalTest) {
+		TLongObjectHashMap<Node<StateType, ActionType>> openNodes = new TLongObjectHashMap<>();
+		TLongHashSet closedFingerprints = new TLongHashSet();
+		IndexedHeap<Node<StateType, ActionType>> open = new IndexedHeap<>();
+		StateType target = Goal.targetOf(goalTest);
+		TR<StateType, ActionType> goalTR = target != null ? tr.forGoal(target) : tr;
+		SearchBudget.Meter meter = budget.start();
+		long expanded = 0;
+		exhausted = null;
+
+		Node<StateType, ActionType> startstate = new Node<>(initial, null);
+		startstate.fingerprint = fingerprinter.fingerprint(initial);
+		startstate.gscore = 0;
+		startstate.hscore = estimateDistToGoal(initial, target);
+		startstate.fscore = startstate.hscore;
+		openNodes.put(startstate.fingerprint, startstate);
+		open.put(startstate, startstate.fscore, startstate.hscore);
+
+		while (!open.isEmpty()) {
+			Node<StateType, ActionType> current = open.pop();
+
+			StateType currentState = current.state;
+			if (goalTest.test(currentState)) {
+				// Found a solution.
+				return current;
+			}
+
+			current.closed = true;
+			openNodes.remove(current.fingerprint);
+			closedFingerprints.add(current.fingerprint);
+			if (current != startstate) {
+				// The state can be recomputed from the initial state.
+				current.state = null;
+			}
+			++expanded;
+			exhausted = meter.exhausted(expanded, openNodes.size());
+			if (exhausted != null) {
+				return null;
+			}
+
+			for (Transition<StateType, ActionType> transition : goalTR.successors(currentState)) {
+				StateType nextState = transition.state;
+				long nextFingerprint = fingerprinter.fingerprint(nextState);
+				if (closedFingerprints.contains(nextFingerprint)) {
+					continue;
+				}
+				float tentativeGScore = current.gscore + transition.cost;
+				Node<StateType, ActionType> neighborNode = openNodes.get(nextFingerprint);
+				if (neighborNode == null) {
+					// This is a never before seen state.
+					neighborNode = new Node<>(nextState, current);
+					neighborNode.fingerprint = nextFingerprint;
+					neighborNode.hscore = estimateDistToGoal(nextState, target);
+					openNodes.put(nextFingerprint, neighborNode);
+				} else if (tentativeGScore >= neighborNode.gscore) {
+					continue;
 				}
+				neighborNode.parent = current;
+				neighborNode.computedFrom = transition.action;
+				neighborNode.gscore = tentativeGScore;
+				neighborNode.fscore = tentativeGScore + neighborNode.hscore;
+				open.put(neighborNode, neighborNode.fscore, neighborNode.hscore);
 			}
 		}
 
@@ -118,6 +381,28 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 		return null;
 	}
 
+	/**
+	 * Returns the object by which the search identifies the given state.
+	 */
+	protected Object stateKey(StateType state, StateType target) {
+		return equivalence != null ? equivalence.key(state, target) : state;
+	}
+
+	/**
+	 * Returns a lower bound on the cost of reaching the goal from the given state.
+	 * 
+	 * @param target
+	 *            The target state of the goal or null if the goal is not given by
+	 *            a target state.
+	 */
+	protected float estimateDistToGoal(StateType state, StateType target) {
+		if (heuristic != null && target != null) {
+			return heuristic.estimate(state, target);
+		} else {
+			return tr.estimateDistToGoal(state);
+		}
+	}
+
 	/**
 	 * Uses the 'computedFrom' back links to construct the path from the initial
 	 * node to the given node.
@@ -128,6 +413,10 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 	 *            A search node.
 	 */
 	protected void createPath(final Node<StateType, ActionType> node, Trace<StateType, ActionType> addToPlan) {
+		if (fingerprinter != null) {
+			replayPath(node, addToPlan);
+			return;
+		}
 		ArrayList<ActionType> actions = new ArrayList<>();
 		ArrayList<StateType> states = new ArrayList<>();
 		states.add(node.state);
@@ -143,6 +432,36 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 		addToPlan.appendPlan(result);
 	}
 
+	/**
+	 * Reconstructs the path from the initial node to the given node when closed
+	 * nodes do not keep their states, by replaying the actions along the path and
+	 * selecting the successors by their fingerprints.
+	 */
+	protected void replayPath(final Node<StateType, ActionType> node, Trace<StateType, ActionType> addToPlan) {
+		ArrayList<Node<StateType, ActionType>> path = new ArrayList<>();
+		for (Node<StateType, ActionType> pathNode = node; pathNode != null; pathNode = pathNode.parent) {
+			path.add(pathNode);
+		}
+		Collections.reverse(path);
+
+		StateType state = path.get(0).state;
+		Trace<StateType, ActionType> result = new ArrayListTrace<>(state);
+		for (int i = 1; i < path.size(); ++i) {
+			Node<StateType, ActionType> pathNode = path.get(i);
+			StateType nextState = null;
+			for (StateType succ : tr.apply(state, pathNode.computedFrom)) {
+				if (fingerprinter.fingerprint(succ) == pathNode.fingerprint) {
+					nextState = succ;
+					break;
+				}
+			}
+			assert nextState != null : "Unable to replay " + pathNode.computedFrom + "!";
+			result.append(pathNode.computedFrom, nextState);
+			state = nextState;
+		}
+		addToPlan.appendPlan(result);
+	}
+
 	/**
 	 * A node in the search graph.
 	 * 
@@ -153,7 +472,7 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 	 * @param <ActionType>
 	 *            The type of actions in the transition relation.
 	 */
-	protected static class Node<StateType, ActionType> {
+	protected static class Node<StateType, ActionType> extends IndexedHeap.Element {
 		public static final float MAX_SCORE = Float.POSITIVE_INFINITY;
 
 		/**
@@ -171,6 +490,12 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 		 */
 		public ActionType computedFrom;
 
+		/**
+		 * The fingerprint of the state, which is only used by searches that do not
+		 * keep the states of closed nodes.
+		 */
+		public long fingerprint;
+
 		/**
 		 * Indicates that this state has been fully explored.
 		 */
@@ -181,12 +506,23 @@ public class AStar<StateType, ActionType> implements Planner<StateType, ActionTy
 		 */
 		public float gscore = MAX_SCORE;
 
+		/**
+		 * The heuristic estimate of the cost of the path from this node to the goal.
+		 */
+		public float hscore = 0;
+
 		/**
 		 * A utility score consisting of the gscore and the heuristic estimate to the
 		 * goal.
 		 */
 		public float fscore = MAX_SCORE;
 
+		/**
+		 * The actions that need not be taken from this node, which is only used by
+		 * searches with partial-order reduction.
+		 */
+		public Set<ActionType> sleep = Collections.emptySet();
+
 		public Node(StateType s, Node<StateType, ActionType> p) {
 			this.state = s;
 			this.parent = p;
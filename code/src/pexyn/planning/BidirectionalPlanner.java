@@ -0,0 +1,356 @@
+package pexyn.planning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import pexyn.ArrayListTrace;
+import pexyn.Trace;
+
+/**
+ * A planner that searches forward from the input state and backward from the
+ * target of a {@link Goal}, one breadth-first layer at a time, always
+ * expanding the smaller of the two frontiers. The frontiers meet when a forward
+ * state agrees with a backward partial state, which is detected by indexing
+ * both sides by their projections onto the domains of the partial states.<br>
+ * Backward search only uses the actions that the transition relation can
+ * regress, and every meeting is confirmed by replaying its backward half
+ * forward. The forward half is an uninformed breadth-first search, so goals
+ * that it would have to reach on its own are handed to the fallback planner,
+ * which is typically an A* search guided by a heuristic: goals that are not
+ * given by a target state, goals on which the input disagrees with a part that
+ * only non-regressible actions produce (see
+ * {@link InvertibleTR#regressible}), which are detected before searching, and
+ * goals whose backward frontier runs out before the frontiers meet, in which
+ * case the bidirectional search is discarded.<br>
+ * The plans are shortest for transition relations with unit costs.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ * @param <ActionType>
+ *            The type of actions in the transition relation.
+ */
+public class BidirectionalPlanner<StateType, ActionType> implements Planner<StateType, ActionType> {
+	/**
+	 * The transition relation over which the search is performed.
+	 */
+	protected final InvertibleTR<StateType, ActionType> tr;
+
+	/**
+	 * The planner used for goals that cannot be searched for backwards.
+	 */
+	protected final Planner<StateType, ActionType> fallback;
+
+	/**
+	 * Bounds the resources consumed by each search.
+	 */
+	protected SearchBudget budget = SearchBudget.UNBOUNDED;
+
+	/**
+	 * The resource exhausted by the last search or null if the search ran to
+	 * completion.
+	 */
+	protected SearchBudget.Resource exhausted;
+
+	public BidirectionalPlanner(InvertibleTR<StateType, ActionType> tr, Planner<StateType, ActionType> fallback) {
+		assert tr != null && fallback != null;
+		this.tr = tr;
+		this.fallback = fallback;
+	}
+
+	/**
+	 * Sets the bounds on the resources consumed by each search. The fallback
+	 * planner is bounded separately.
+	 */
+	public void setBudget(SearchBudget budget) {
+		assert budget != null;
+		this.budget = budget;
+	}
+
+	@Override
+	public Optional<SearchBudget.Resource> exhaustedResource() {
+		return Optional.ofNullable(exhausted);
+	}
+
+	@Override
+	public SearchResultType findPlan(StateType input, Predicate<StateType> goalTest,
+			Trace<StateType, ActionType> addToPlan) {
+		exhausted = null;
+		StateType target = Goal.targetOf(goalTest);
+		if (target == null) {
+			return findFallbackPlan(input, goalTest, addToPlan);
+		}
+		if (goalTest.test(input)) {
+			return SearchResultType.OK;
+		}
+		InvertibleTR<StateType, ActionType> goalTR = tr.forGoal(target);
+		if (!goalTR.regressible(input, target)) {
+			return findFallbackPlan(input, goalTest, addToPlan);
+		}
+
+		Search search = new Search(input, target, goalTest, goalTR);
+		search.run();
+		if (search.plan != null) {
+			addToPlan.appendPlan(search.plan);
+			return SearchResultType.OK;
+		} else if (exhausted != null) {
+			return SearchResultType.OUT_OF_RESOURCES;
+		} else if (search.forwardLayer.isEmpty()) {
+			return SearchResultType.NO_SOLUTION_EXISTS;
+		} else {
+			return findFallbackPlan(input, goalTest, addToPlan);
+		}
+	}
+
+	private SearchResultType findFallbackPlan(StateType input, Predicate<StateType> goalTest,
+			Trace<StateType, ActionType> addToPlan) {
+		SearchResultType result = fallback.findPlan(input, goalTest, addToPlan);
+		exhausted = fallback.exhaustedResource().orElse(null);
+		return result;
+	}
+
+	/**
+	 * The state of a single bidirectional search.
+	 *
+	 * @author romanm
+	 */
+	private class Search {
+		private final Predicate<StateType> goalTest;
+		private final InvertibleTR<StateType, ActionType> goalTR;
+		private final SearchBudget.Meter meter = budget.start();
+		private long expanded = 0;
+
+		private final Map<StateType, ForwardNode> forwardNodes = new HashMap<>();
+		private final Map<StateType, BackwardNode> backwardNodes = new HashMap<>();
+
+		/**
+		 * Maps the domain of each backward node to the projections of the backward
+		 * nodes with that domain. When several nodes share a projection, the
+		 * shallowest one is kept.
+		 */
+		private final Map<Object, Map<Object, BackwardNode>> backwardIndex = new HashMap<>();
+
+		/**
+		 * Maps the domain of each backward node to the projections of all forward
+		 * nodes onto that domain.
+		 */
+		private final Map<Object, Map<Object, ForwardNode>> forwardIndex = new HashMap<>();
+
+		private List<ForwardNode> forwardLayer = new ArrayList<>();
+		private List<BackwardNode> backwardLayer = new ArrayList<>();
+
+		/**
+		 * The shortest plan found so far or null if no plan has been found.
+		 */
+		private Trace<StateType, ActionType> plan;
+		private int planLength = Integer.MAX_VALUE;
+
+		public Search(StateType input, StateType target, Predicate<StateType> goalTest,
+				InvertibleTR<StateType, ActionType> goalTR) {
+			this.goalTest = goalTest;
+			this.goalTR = goalTR;
+			BackwardNode goalNode = new BackwardNode(target, null, null, 0);
+			addBackward(goalNode);
+			backwardLayer.add(goalNode);
+			ForwardNode inputNode = new ForwardNode(input, null, null, 0);
+			addForward(inputNode);
+			forwardLayer.add(inputNode);
+		}
+
+		/**
+		 * Expands layers until the frontiers meet, one of them runs out, or the
+		 * budget is exhausted.
+		 */
+		public void run() {
+			while (plan == null && !forwardLayer.isEmpty() && !backwardLayer.isEmpty() && exhausted == null) {
+				if (backwardLayer.size() < forwardLayer.size()) {
+					expandBackwardLayer();
+				} else {
+					expandForwardLayer();
+				}
+			}
+		}
+
+		private void expandForwardLayer() {
+			List<ForwardNode> nextLayer = new ArrayList<>();
+			for (ForwardNode node : forwardLayer) {
+				if (!consume()) {
+					return;
+				}
+				for (Transition<StateType, ActionType> transition : goalTR.successors(node.state)) {
+					StateType nextState = transition.state;
+					if (forwardNodes.containsKey(nextState)) {
+						continue;
+					}
+					ForwardNode nextNode = new ForwardNode(nextState, node, transition.action, node.depth + 1);
+					nextLayer.add(nextNode);
+					if (goalTest.test(nextState) && nextNode.depth < planLength) {
+						plan = forwardPath(nextNode);
+						planLength = nextNode.depth;
+					}
+					addForward(nextNode);
+				}
+			}
+			forwardLayer = nextLayer;
+		}
+
+		private void expandBackwardLayer() {
+			List<BackwardNode> nextLayer = new ArrayList<>();
+			for (BackwardNode node : backwardLayer) {
+				if (!consume()) {
+					return;
+				}
+				for (ActionType action : goalTR.actions()) {
+					for (StateType prevPartial : goalTR.regress(node.partial, action)) {
+						if (backwardNodes.containsKey(prevPartial)) {
+							continue;
+						}
+						BackwardNode prevNode = new BackwardNode(prevPartial, node, action, node.depth + 1);
+						nextLayer.add(prevNode);
+						addBackward(prevNode);
+					}
+				}
+			}
+			backwardLayer = nextLayer;
+		}
+
+		/**
+		 * Accounts for the expansion of a node and returns false if the budget
+		 * has been exhausted.
+		 */
+		private boolean consume() {
+			++expanded;
+			exhausted = meter.exhausted(expanded, forwardNodes.size() + backwardNodes.size());
+			return exhausted == null;
+		}
+
+		private void addForward(ForwardNode node) {
+			forwardNodes.put(node.state, node);
+			for (Map.Entry<Object, Map<Object, ForwardNode>> entry : forwardIndex.entrySet()) {
+				Object projection = tr.projectOnto(node.state, entry.getKey());
+				if (projection == null) {
+					continue;
+				}
+				entry.getValue().putIfAbsent(projection, node);
+				BackwardNode match = backwardIndex.get(entry.getKey()).get(projection);
+				if (match != null) {
+					meet(node, match);
+				}
+			}
+		}
+
+		private void addBackward(BackwardNode node) {
+			backwardNodes.put(node.partial, node);
+			Object domain = tr.domainOf(node.partial);
+			Object projection = tr.projectOnto(node.partial, domain);
+			backwardIndex.computeIfAbsent(domain, d -> new HashMap<>()).putIfAbsent(projection, node);
+			Map<Object, ForwardNode> domainIndex = forwardIndex.get(domain);
+			if (domainIndex == null) {
+				// A domain we have not seen before, so we index all of the forward
+				// nodes by it.
+				domainIndex = new HashMap<>();
+				forwardIndex.put(domain, domainIndex);
+				for (ForwardNode forwardNode : forwardNodes.values()) {
+					Object forwardProjection = tr.projectOnto(forwardNode.state, domain);
+					if (forwardProjection != null) {
+						ForwardNode other = domainIndex.get(forwardProjection);
+						if (other == null || forwardNode.depth < other.depth) {
+							domainIndex.put(forwardProjection, forwardNode);
+						}
+					}
+				}
+			}
+			ForwardNode match = domainIndex.get(projection);
+			if (match != null) {
+				meet(match, node);
+			}
+		}
+
+		/**
+		 * Records the plan passing through the given nodes, if it is shorter than
+		 * the best plan found so far and its backward half can be replayed.
+		 */
+		private void meet(ForwardNode forwardNode, BackwardNode backwardNode) {
+			int length = forwardNode.depth + backwardNode.depth;
+			if (length >= planLength) {
+				return;
+			}
+			Trace<StateType, ActionType> candidate = forwardPath(forwardNode);
+			StateType state = forwardNode.state;
+			for (BackwardNode node = backwardNode; node.next != null; node = node.next) {
+				Object domain = tr.domainOf(node.next.partial);
+				Object expected = tr.projectOnto(node.next.partial, domain);
+				StateType nextState = null;
+				for (StateType succ : tr.apply(state, node.action)) {
+					if (expected.equals(tr.projectOnto(succ, domain))) {
+						nextState = succ;
+						break;
+					}
+				}
+				if (nextState == null) {
+					return;
+				}
+				candidate.append(node.action, nextState);
+				state = nextState;
+			}
+			if (goalTest.test(state)) {
+				plan = candidate;
+				planLength = length;
+			}
+		}
+
+		private Trace<StateType, ActionType> forwardPath(ForwardNode node) {
+			ArrayList<ActionType> actions = new ArrayList<>();
+			ArrayList<StateType> states = new ArrayList<>();
+			states.add(node.state);
+			for (ForwardNode pathNode = node; pathNode.parent != null; pathNode = pathNode.parent) {
+				actions.add(pathNode.computedFrom);
+				states.add(pathNode.parent.state);
+			}
+			Collections.reverse(actions);
+			Collections.reverse(states);
+			return new ArrayListTrace<>(states, actions);
+		}
+	}
+
+	/**
+	 * A node of the forward search, holding a complete state.
+	 */
+	private class ForwardNode {
+		public final StateType state;
+		public final ForwardNode parent;
+		public final ActionType computedFrom;
+		public final int depth;
+
+		public ForwardNode(StateType state, ForwardNode parent, ActionType computedFrom, int depth) {
+			this.state = state;
+			this.parent = parent;
+			this.computedFrom = computedFrom;
+			this.depth = depth;
+		}
+	}
+
+	/**
+	 * A node of the backward search, holding a partial state from which 'action'
+	 * leads to the partial state of the 'next' node.
+	 */
+	private class BackwardNode {
+		public final StateType partial;
+		public final BackwardNode next;
+		public final ActionType action;
+		public final int depth;
+
+		public BackwardNode(StateType partial, BackwardNode next, ActionType action, int depth) {
+			this.partial = partial;
+			this.next = next;
+			this.action = action;
+			this.depth = depth;
+		}
+	}
+}
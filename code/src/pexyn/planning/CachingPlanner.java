@@ -0,0 +1,178 @@
+package pexyn.planning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import pexyn.ArrayListTrace;
+import pexyn.Trace;
+
+/**
+ * A planner that looks up plans for goals given by a target state in a
+ * {@link PlanCache} before delegating to another planner, and stores the plans
+ * found by the other planner in the cache.<br>
+ * The key of a plan is the SHA-256 digest of the name of the planner, the list
+ * of actions, the costs of the actions in the start state, and the canonical
+ * encoding of the start and target states, so that plans found by other
+ * planners or under other costs are not reused. Cached plans are replayed from
+ * the start state and checked against the goal, and plans that fail the check
+ * are evicted and planned again.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ * @param <ActionType>
+ *            The type of actions in the transition relation.
+ */
+public class CachingPlanner<StateType, ActionType> implements Planner<StateType, ActionType> {
+	protected final Planner<StateType, ActionType> planner;
+	protected final TR<StateType, ActionType> tr;
+	protected final PlanCodec<StateType, ActionType> codec;
+	protected final PlanCache cache;
+
+	private final List<ActionType> actions;
+	private final Map<ActionType, Integer> actionToIndex = new HashMap<>();
+
+	/**
+	 * A digest of the name of the planner and the actions, which is a part of
+	 * every key.
+	 */
+	private final byte[] actionsDigest;
+
+	/**
+	 * Constructs a cache in front of the given planner.
+	 *
+	 * @param plannerName
+	 *            The name of the planner, which tells apart the plans found by
+	 *            different planners in the same cache.
+	 */
+	public CachingPlanner(Planner<StateType, ActionType> planner, String plannerName,
+			TR<StateType, ActionType> tr, PlanCodec<StateType, ActionType> codec, PlanCache cache) {
+		this.planner = planner;
+		this.tr = tr;
+		this.codec = codec;
+		this.cache = cache;
+		this.actions = codec.actions();
+		MessageDigest digest = newDigest();
+		digest.update(plannerName.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		for (int i = 0; i < actions.size(); ++i) {
+			ActionType action = actions.get(i);
+			actionToIndex.putIfAbsent(action, i);
+			digest.update(action.toString().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		this.actionsDigest = digest.digest();
+	}
+
+	@Override
+	public Optional<SearchBudget.Resource> exhaustedResource() {
+		return planner.exhaustedResource();
+	}
+
+	@Override
+	public SearchResultType findPlan(StateType input, Predicate<StateType> goalTest,
+			Trace<StateType, ActionType> addToPlan) {
+		StateType target = Goal.targetOf(goalTest);
+		if (target == null) {
+			return planner.findPlan(input, goalTest, addToPlan);
+		}
+
+		String key = key(input, target);
+		Optional<int[]> cachedPlan = cache.get(key);
+		if (cachedPlan.isPresent()) {
+			Trace<StateType, ActionType> plan = replay(input, goalTest, cachedPlan.get());
+			if (plan != null) {
+				addToPlan.appendPlan(plan);
+				return SearchResultType.OK;
+			}
+			cache.remove(key);
+		}
+
+		Trace<StateType, ActionType> plan = new ArrayListTrace<>(input);
+		SearchResultType result = planner.findPlan(input, goalTest, plan);
+		if (result == SearchResultType.OK) {
+			addToPlan.appendPlan(plan);
+			store(key, plan);
+		}
+		return result;
+	}
+
+	private void store(String key, Trace<StateType, ActionType> plan) {
+		int[] indices = new int[plan.size() - 1];
+		for (int i = 0; i < indices.length; ++i) {
+			Integer index = actionToIndex.get(plan.actionAt(i));
+			if (index == null) {
+				// The plan uses an action that cannot be encoded.
+				return;
+			}
+			indices[i] = index;
+		}
+		try {
+			cache.put(key, indices);
+		} catch (IOException e) {
+			// Caching is an optimization, so failing to cache is not an error.
+		}
+	}
+
+	/**
+	 * Applies the actions with the given indices from the given state and returns
+	 * the resulting plan, or null if an action is out of range or not applicable,
+	 * or the plan does not reach the goal.
+	 */
+	private Trace<StateType, ActionType> replay(StateType input, Predicate<StateType> goalTest, int[] indices) {
+		Trace<StateType, ActionType> result = new ArrayListTrace<>(input);
+		StateType state = input;
+		for (int index : indices) {
+			if (index >= actions.size()) {
+				return null;
+			}
+			ActionType action = actions.get(index);
+			var succs = tr.apply(state, action);
+			if (succs.size() != 1) {
+				return null;
+			}
+			state = succs.iterator().next();
+			result.append(action, state);
+		}
+		return goalTest.test(state) ? result : null;
+	}
+
+	private String key(StateType start, StateType target) {
+		MessageDigest digest = newDigest();
+		digest.update(actionsDigest);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (var out = new DataOutputStream(bytes)) {
+			for (ActionType action : actions) {
+				out.writeFloat(tr.actionCost(start, action));
+			}
+			codec.writeProblem(start, target, out);
+		} catch (IOException e) {
+			throw new Error(e);
+		}
+		digest.update(bytes.toByteArray());
+
+		StringBuilder result = new StringBuilder();
+		for (byte b : digest.digest()) {
+			result.append(String.format("%02x", b));
+		}
+		return result.toString();
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error(e);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package pexyn.planning;
+
+/**
+ * Maps states to 64-bit fingerprints, which stand for states where keeping the
+ * states themselves is too costly. Equal states must have equal fingerprints,
+ * and distinct states should collide with negligible probability.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ */
+@FunctionalInterface
+public interface Fingerprinter<StateType> {
+	public long fingerprint(StateType state);
+}
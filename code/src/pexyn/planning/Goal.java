@@ -0,0 +1,51 @@
+package pexyn.planning;
+
+import java.util.function.Predicate;
+
+/**
+ * A goal condition that is given in terms of a target state. A state satisfies
+ * the goal if it passes the goal test, which is typically a (partial) match
+ * against the target. Planners that recognize goals of this type can use the
+ * target to inform their search.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ */
+public class Goal<StateType> implements Predicate<StateType> {
+	/**
+	 * The state that the goal test matches against.
+	 */
+	public final StateType target;
+
+	private final Predicate<StateType> test;
+
+	public Goal(StateType target, Predicate<StateType> test) {
+		assert target != null && test != null;
+		this.target = target;
+		this.test = test;
+	}
+
+	public static <StateType> Goal<StateType> of(StateType target, Predicate<StateType> test) {
+		return new Goal<>(target, test);
+	}
+
+	/**
+	 * Returns the target state of the given goal test, if it is a {@link Goal},
+	 * and null otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <StateType> StateType targetOf(Predicate<StateType> goalTest) {
+		if (goalTest instanceof Goal) {
+			return ((Goal<StateType>) goalTest).target;
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	public boolean test(StateType state) {
+		return test.test(state);
+	}
+}
@@ -0,0 +1,24 @@
+package pexyn.planning;
+
+/**
+ * A heuristic function that estimates the distance from a state to the set of
+ * states that satisfy a {@link Goal}.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ */
+@FunctionalInterface
+public interface GoalHeuristic<StateType> {
+	/**
+	 * Returns a lower bound on the cost of any path from the given state to a
+	 * state satisfying the goal given by the target state.
+	 *
+	 * @param state
+	 *            The state from which the distance is estimated.
+	 * @param target
+	 *            The target state of a {@link Goal}.
+	 */
+	public float estimate(StateType state, StateType target);
+}
@@ -0,0 +1,260 @@
+package pexyn.planning;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import pexyn.ArrayListTrace;
+import pexyn.Trace;
+
+/**
+ * An implementation of the iterative-deepening A* search algorithm (IDA*),
+ * whose memory is linear in the depth of the search, plus a transposition table
+ * of bounded size.<br>
+ * Each iteration is a depth-first search that prunes nodes whose f-score
+ * exceeds the current bound, and the next bound is the smallest f-score that
+ * was pruned. States on the current path are skipped, and the transposition
+ * table prunes states that were already reached in the current iteration by a
+ * path that is not more expensive. When the table is full, the least recently
+ * used entries are evicted, which costs re-expansions but never plans.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ * @param <ActionType>
+ *            The type of actions in the transition relation.
+ */
+public class IDAStar<StateType, ActionType> implements Planner<StateType, ActionType> {
+	/**
+	 * The transition relation over which the search is performed.
+	 */
+	protected final TR<StateType, ActionType> tr;
+
+	/**
+	 * An optional heuristic, which is used for goals given by a target state.
+	 */
+	protected final GoalHeuristic<StateType> heuristic;
+
+	/**
+	 * The maximal number of entries in the transposition table.
+	 */
+	protected final int transpositionTableSize;
+
+	/**
+	 * Bounds the resources consumed by each search.
+	 */
+	protected SearchBudget budget = SearchBudget.UNBOUNDED;
+
+	/**
+	 * The resource exhausted by the last search or null if the search ran to
+	 * completion.
+	 */
+	protected SearchBudget.Resource exhausted;
+
+	/**
+	 * Constructs an instance of the algorithm for the given transition system,
+	 * which uses the given heuristic for goals of type {@link Goal}.
+	 *
+	 * @param transpositionTableSize
+	 *            The maximal number of entries in the transposition table. A
+	 *            non-positive value disables the table.
+	 */
+	public IDAStar(TR<StateType, ActionType> tr, GoalHeuristic<StateType> heuristic, int transpositionTableSize) {
+		this.tr = tr;
+		this.heuristic = heuristic;
+		this.transpositionTableSize = transpositionTableSize;
+	}
+
+	/**
+	 * Sets the bounds on the resources consumed by each search. The bounds apply
+	 * to the total over all iterations.
+	 */
+	public void setBudget(SearchBudget budget) {
+		assert budget != null;
+		this.budget = budget;
+	}
+
+	@Override
+	public Optional<SearchBudget.Resource> exhaustedResource() {
+		return Optional.ofNullable(exhausted);
+	}
+
+	@Override
+	public SearchResultType findPlan(StateType input, Predicate<StateType> goalTest,
+			Trace<StateType, ActionType> addToPlan) {
+		Search search = new Search(goalTest);
+		if (search.run(input)) {
+			addToPlan.appendPlan(new ArrayListTrace<>(search.states, search.actions));
+			return SearchResultType.OK;
+		} else if (exhausted != null) {
+			return SearchResultType.OUT_OF_RESOURCES;
+		} else {
+			return SearchResultType.NO_SOLUTION_EXISTS;
+		}
+	}
+
+	/**
+	 * Returns a lower bound on the cost of reaching the goal from the given state.
+	 *
+	 * @param target
+	 *            The target state of the goal or null if the goal is not given by
+	 *            a target state.
+	 */
+	protected float estimateDistToGoal(StateType state, StateType target) {
+		if (heuristic != null && target != null) {
+			return heuristic.estimate(state, target);
+		} else {
+			return tr.estimateDistToGoal(state);
+		}
+	}
+
+	/**
+	 * The state of a single search.
+	 *
+	 * @author romanm
+	 */
+	private class Search {
+		private final Predicate<StateType> goalTest;
+		private final StateType target;
+		private final TR<StateType, ActionType> goalTR;
+		private final SearchBudget.Meter meter = budget.start();
+		private long expanded = 0;
+
+		/**
+		 * The states and actions of the current path.
+		 */
+		private final ArrayList<StateType> states = new ArrayList<>();
+		private final ArrayList<ActionType> actions = new ArrayList<>();
+		private final Set<StateType> onPath = new HashSet<>();
+
+		private final TranspositionTable table = new TranspositionTable();
+		private int iteration = 0;
+		private boolean found = false;
+
+		public Search(Predicate<StateType> goalTest) {
+			this.goalTest = goalTest;
+			this.target = Goal.targetOf(goalTest);
+			this.goalTR = target != null ? tr.forGoal(target) : tr;
+			exhausted = null;
+		}
+
+		/**
+		 * Searches for a plan from the given state, and returns true if one is
+		 * found, in which case it is held by 'states' and 'actions'.
+		 */
+		public boolean run(StateType input) {
+			states.add(input);
+			onPath.add(input);
+			float bound = estimateDistToGoal(input, target);
+			while (true) {
+				++iteration;
+				float nextBound = search(input, 0, bound);
+				if (found) {
+					return true;
+				} else if (exhausted != null || nextBound == Float.POSITIVE_INFINITY) {
+					return false;
+				}
+				bound = nextBound;
+			}
+		}
+
+		/**
+		 * Searches below the given state, which is last on the current path, and
+		 * returns the smallest f-score that exceeds the bound.
+		 */
+		private float search(StateType state, float gscore, float bound) {
+			float fscore = gscore + estimateDistToGoal(state, target);
+			if (fscore > bound) {
+				return fscore;
+			}
+			if (goalTest.test(state)) {
+				found = true;
+				return fscore;
+			}
+			if (!table.visit(state, gscore, iteration)) {
+				return Float.POSITIVE_INFINITY;
+			}
+			++expanded;
+			exhausted = meter.exhausted(expanded, states.size() + table.size());
+			if (exhausted != null) {
+				return Float.POSITIVE_INFINITY;
+			}
+
+			float minExceeding = Float.POSITIVE_INFINITY;
+			for (Transition<StateType, ActionType> transition : goalTR.successors(state)) {
+				StateType nextState = transition.state;
+				if (onPath.contains(nextState)) {
+					continue;
+				}
+				states.add(nextState);
+				actions.add(transition.action);
+				onPath.add(nextState);
+				float result = search(nextState, gscore + transition.cost, bound);
+				if (found) {
+					return result;
+				}
+				states.remove(states.size() - 1);
+				actions.remove(actions.size() - 1);
+				onPath.remove(nextState);
+				if (exhausted != null) {
+					return Float.POSITIVE_INFINITY;
+				}
+				minExceeding = Math.min(minExceeding, result);
+			}
+			return minExceeding;
+		}
+	}
+
+	/**
+	 * Maps states to the cheapest cost by which they were reached in the last
+	 * iteration that reached them, evicting the least recently used entries.
+	 *
+	 * @author romanm
+	 */
+	private class TranspositionTable extends LinkedHashMap<StateType, TableEntry> {
+		private static final long serialVersionUID = 1L;
+
+		public TranspositionTable() {
+			super(16, 0.75f, true);
+		}
+
+		/**
+		 * Records a visit to the given state and returns false if the state has
+		 * already been reached by a path that is not more expensive in the same
+		 * iteration.
+		 */
+		public boolean visit(StateType state, float gscore, int iteration) {
+			if (transpositionTableSize <= 0) {
+				return true;
+			}
+			TableEntry entry = get(state);
+			if (entry == null) {
+				entry = new TableEntry();
+				put(state, entry);
+			} else if (entry.iteration == iteration && entry.gscore <= gscore) {
+				return false;
+			}
+			entry.gscore = gscore;
+			entry.iteration = iteration;
+			return true;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<StateType, TableEntry> eldest) {
+			return size() > transpositionTableSize;
+		}
+	}
+
+	/**
+	 * The cheapest cost by which a state was reached in a given iteration.
+	 */
+	private static class TableEntry {
+		public float gscore;
+		public int iteration;
+	}
+}
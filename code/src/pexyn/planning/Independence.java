@@ -0,0 +1,21 @@
+package pexyn.planning;
+
+/**
+ * An independence relation over actions, which is used for partial-order
+ * reduction. Two actions are independent if, in every state where both are
+ * enabled, executing one of them neither enables nor disables the other, and
+ * executing them in either order leads to the same states.
+ *
+ * @author romanm
+ *
+ * @param <ActionType>
+ *            The type of actions in the transition relation.
+ */
+@FunctionalInterface
+public interface Independence<ActionType> {
+	/**
+	 * Tests whether the given actions are independent. The relation must be
+	 * symmetric, and it is safe to return false for any pair of actions.
+	 */
+	public boolean independent(ActionType first, ActionType second);
+}
@@ -0,0 +1,185 @@
+package pexyn.planning;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of search nodes, which supports changing the key of an
+ * element in place. Each element records its own position in the heap, and
+ * can therefore be in at most one heap at a time.<br>
+ * Elements are ordered by a primary key, and elements with equal primary keys
+ * by a secondary key. Planners use the f-score and the heuristic estimate,
+ * respectively, which prefers deeper nodes among nodes with equal f-scores.
+ *
+ * @author romanm
+ *
+ * @param <E>
+ *            The type of elements in the heap.
+ */
+public class IndexedHeap<E extends IndexedHeap.Element> {
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The base class of heap elements.
+	 *
+	 * @author romanm
+	 */
+	public static class Element {
+		/**
+		 * The position of the element in the heap it belongs to, or -1.
+		 */
+		private int heapIndex = -1;
+	}
+
+	private Element[] elements = new Element[INITIAL_CAPACITY];
+	private float[] keys = new float[INITIAL_CAPACITY];
+	private float[] secondaryKeys = new float[INITIAL_CAPACITY];
+	private int size = 0;
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Tests whether the given element is in this heap.
+	 */
+	public boolean contains(E e) {
+		int i = ((Element) e).heapIndex;
+		return i >= 0 && i < size && elements[i] == e;
+	}
+
+	/**
+	 * Inserts the given element with the given keys, or updates its keys if it is
+	 * already in the heap.
+	 */
+	public void put(E e, float key, float secondaryKey) {
+		Element element = e;
+		int i;
+		if (contains(e)) {
+			i = element.heapIndex;
+		} else {
+			assert element.heapIndex < 0 : "Element belongs to another heap!";
+			if (size == elements.length) {
+				int capacity = size * 2;
+				elements = Arrays.copyOf(elements, capacity);
+				keys = Arrays.copyOf(keys, capacity);
+				secondaryKeys = Arrays.copyOf(secondaryKeys, capacity);
+			}
+			i = size++;
+			elements[i] = element;
+			element.heapIndex = i;
+		}
+		keys[i] = key;
+		secondaryKeys[i] = secondaryKey;
+		siftDown(siftUp(i));
+	}
+
+	/**
+	 * Returns an element with minimal keys without removing it.
+	 */
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		assert size > 0;
+		return (E) elements[0];
+	}
+
+	/**
+	 * Returns the primary key of the element returned by {@link #peek()}.
+	 */
+	public float peekKey() {
+		assert size > 0;
+		return keys[0];
+	}
+
+	/**
+	 * Removes and returns an element with minimal keys.
+	 */
+	public E pop() {
+		E result = peek();
+		removeAt(0);
+		return result;
+	}
+
+	/**
+	 * Removes the given element from the heap, if it is in it.
+	 */
+	public void remove(E e) {
+		if (contains(e)) {
+			removeAt(((Element) e).heapIndex);
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; ++i) {
+			elements[i].heapIndex = -1;
+			elements[i] = null;
+		}
+		size = 0;
+	}
+
+	private void removeAt(int i) {
+		elements[i].heapIndex = -1;
+		--size;
+		if (i < size) {
+			move(size, i);
+			elements[size] = null;
+			siftDown(siftUp(i));
+		} else {
+			elements[i] = null;
+		}
+	}
+
+	private boolean less(int i, int j) {
+		return keys[i] < keys[j] || (keys[i] == keys[j] && secondaryKeys[i] < secondaryKeys[j]);
+	}
+
+	private int siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!less(i, parent)) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+		return i;
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && less(child + 1, child)) {
+				++child;
+			}
+			if (!less(child, i)) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void move(int from, int to) {
+		elements[to] = elements[from];
+		keys[to] = keys[from];
+		secondaryKeys[to] = secondaryKeys[from];
+		elements[to].heapIndex = to;
+	}
+
+	private void swap(int i, int j) {
+		Element e = elements[i];
+		float key = keys[i];
+		float secondaryKey = secondaryKeys[i];
+		move(j, i);
+		elements[j] = e;
+		keys[j] = key;
+		secondaryKeys[j] = secondaryKey;
+		e.heapIndex = j;
+	}
+}
@@ -0,0 +1,59 @@
+package pexyn.planning;
+
+import java.util.Collection;
+
+/**
+ * A transition relation whose actions can (partially) be applied backwards.
+ * Backward search ranges over partial states, which stand for the set of
+ * states that agree with them on some part of the state (their domain), in the
+ * same way that a {@link Goal} target stands for the states matching it.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ * @param <ActionType>
+ *            The type of actions in the transition relation.
+ */
+public interface InvertibleTR<StateType, ActionType> extends TR<StateType, ActionType> {
+	/**
+	 * Returns all of the actions of the transition relation.
+	 */
+	public Collection<ActionType> actions();
+
+	@Override
+	public default InvertibleTR<StateType, ActionType> forGoal(StateType target) {
+		return this;
+	}
+
+	/**
+	 * Returns partial states such that applying the given action to a state
+	 * agreeing with any of them yields a state agreeing with the given partial
+	 * state. The result is empty if the action cannot be inverted for the given
+	 * partial state, or if it does not affect it.
+	 */
+	public Collection<StateType> regress(StateType partial, ActionType action);
+
+	/**
+	 * Returns false if the given state disagrees with the given partial state on
+	 * a part that only actions that cannot be regressed produce. Backward search
+	 * from such a partial state never leaves that part, so reaching it is left
+	 * entirely to a forward search. By default, every part is assumed to be
+	 * regressible.
+	 */
+	public default boolean regressible(StateType state, StateType partial) {
+		return true;
+	}
+
+	/**
+	 * Returns the part of the state constrained by the given partial state.
+	 */
+	public Object domainOf(StateType partial);
+
+	/**
+	 * Returns the restriction of the given (possibly partial) state to the given
+	 * domain, or null if the state does not define the whole domain. Two states
+	 * agree on a domain if their restrictions are equal.
+	 */
+	public Object projectOnto(StateType state, Object domain);
+}
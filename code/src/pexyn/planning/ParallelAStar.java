@@ -0,0 +1,479 @@
+package pexyn.planning;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+import pexyn.ArrayListTrace;
+import pexyn.Trace;
+
+/**
+ * A parallel implementation of A* by hash-distributed search (HDA*). Each
+ * state is owned by one worker thread, chosen by the hash of the state. Workers
+ * keep their own open and closed sets and send generated successors to their
+ * owners through lock-free queues.<br>
+ * Since workers expand nodes out of the global order of f-scores, the first
+ * goal found is not necessarily the cheapest one. Instead, the cheapest goal
+ * found so far is shared by all workers, which keep expanding nodes whose
+ * f-score does not exceed its cost, until no worker has work left and no
+ * messages are in flight. With an admissible heuristic, the search then holds
+ * every optimal path to every optimal goal, and the plan is extracted from
+ * them deterministically, by walking forward from the input state and taking
+ * the first enabled action that stays on an optimal path. Thus, the plan does
+ * not depend on the scheduling of the workers.<br>
+ * The transition relation, the heuristic, and the goal test are used
+ * concurrently and must be thread-safe. A search whose calling thread is
+ * interrupted stops its workers, waits for them to finish, and reports that it
+ * ran out of time, leaving the interrupt status of the thread set.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ * @param <ActionType>
+ *            The type of actions in the transition relation.
+ */
+public class ParallelAStar<StateType, ActionType> implements Planner<StateType, ActionType> {
+	/**
+	 * The time an idle worker waits before checking for new messages.
+	 */
+	private static final long IDLE_PARK_NANOS = 50_000;
+
+	/**
+	 * The transition relation over which the search is performed.
+	 */
+	protected final TR<StateType, ActionType> tr;
+
+	/**
+	 * An optional heuristic, which is used for goals given by a target state.
+	 */
+	protected final GoalHeuristic<StateType> heuristic;
+
+	/**
+	 * The number of worker threads.
+	 */
+	protected final int parallelism;
+
+	/**
+	 * Bounds the resources consumed by each search.
+	 */
+	protected SearchBudget budget = SearchBudget.UNBOUNDED;
+
+	/**
+	 * The resource exhausted by the last search or null if the search ran to
+	 * completion.
+	 */
+	protected SearchBudget.Resource exhausted;
+
+	/**
+	 * Constructs an instance of the algorithm for the given transition system,
+	 * which uses the given heuristic for goals of type {@link Goal}.
+	 *
+	 * @param parallelism
+	 *            The number of worker threads.
+	 */
+	public ParallelAStar(TR<StateType, ActionType> tr, GoalHeuristic<StateType> heuristic, int parallelism) {
+		assert parallelism > 0;
+		this.tr = tr;
+		this.heuristic = heuristic;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the bounds on the resources consumed by each search. The bounds apply
+	 * to the total over all workers.
+	 */
+	public void setBudget(SearchBudget budget) {
+		assert budget != null;
+		this.budget = budget;
+	}
+
+	@Override
+	public Optional<SearchBudget.Resource> exhaustedResource() {
+		return Optional.ofNullable(exhausted);
+	}
+
+	@Override
+	public SearchResultType findPlan(StateType input, Predicate<StateType> goalTest,
+			Trace<StateType, ActionType> addToPlan) {
+		Search search = new Search(goalTest);
+		if (!search.run(input)) {
+			exhausted = SearchBudget.Resource.TIME;
+			return SearchResultType.OUT_OF_RESOURCES;
+		}
+		exhausted = search.exhausted.get();
+		if (exhausted != null) {
+			return SearchResultType.OUT_OF_RESOURCES;
+		} else if (search.bestCost == Float.POSITIVE_INFINITY) {
+			return SearchResultType.NO_SOLUTION_EXISTS;
+		} else {
+			addToPlan.appendPlan(search.extractPlan(input));
+			return SearchResultType.OK;
+		}
+	}
+
+	/**
+	 * The state shared by the workers of a single search.
+	 *
+	 * @author romanm
+	 */
+	private class Search {
+		private final Predicate<StateType> goalTest;
+		private final StateType target;
+		private final TR<StateType, ActionType> goalTR;
+		private final List<Worker> workers = new ArrayList<>(parallelism);
+		private final SearchBudget.Meter meter = budget.start();
+		private final AtomicLong expanded = new AtomicLong();
+		private final AtomicLong stored = new AtomicLong();
+
+		/**
+		 * The number of messages in flight plus the number of busy workers. The
+		 * search terminates when it drops to zero, which can only happen when no
+		 * work is left, since a worker becomes busy before it consumes a message.
+		 */
+		private final AtomicLong work = new AtomicLong();
+
+		private volatile boolean stopped = false;
+		private final AtomicReference<SearchBudget.Resource> exhausted = new AtomicReference<>();
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		/**
+		 * The cost of the cheapest goal found so far.
+		 */
+		private volatile float bestCost = Float.POSITIVE_INFINITY;
+
+		/**
+		 * Goal nodes found during the search, some of which may be suboptimal.
+		 */
+		private final ConcurrentLinkedQueue<Node> goals = new ConcurrentLinkedQueue<>();
+
+		public Search(Predicate<StateType> goalTest) {
+			this.goalTest = goalTest;
+			this.target = Goal.targetOf(goalTest);
+			this.goalTR = target != null ? tr.forGoal(target) : tr;
+			for (int i = 0; i < parallelism; ++i) {
+				workers.add(new Worker());
+			}
+		}
+
+		/**
+		 * Runs the workers until the search terminates, and returns false if the
+		 * calling thread was interrupted, in which case the workers are stopped
+		 * and the search is incomplete.
+		 */
+		public boolean run(StateType input) {
+			send(input, null, null, 0);
+			List<Thread> threads = new ArrayList<>(parallelism);
+			for (int i = 0; i < parallelism; ++i) {
+				Thread thread = new Thread(workers.get(i), "planner-worker-" + i);
+				thread.setDaemon(true);
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			boolean interrupted = false;
+			for (Thread thread : threads) {
+				// The workers must finish before their sets are read, so joining
+				// continues after an interrupt, which only stops the workers.
+				while (thread.isAlive()) {
+					try {
+						thread.join();
+					} catch (InterruptedException e) {
+						interrupted = true;
+						stopped = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			Throwable t = failure.get();
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			} else if (t != null) {
+				throw new Error(t);
+			}
+			return !interrupted;
+		}
+
+		private Worker ownerOf(StateType state) {
+			int hash = state.hashCode() * 0x9E3779B9;
+			return workers.get(Math.floorMod(hash ^ (hash >>> 16), parallelism));
+		}
+
+		private void send(StateType state, Node parent, ActionType action, float gscore) {
+			Worker owner = ownerOf(state);
+			work.incrementAndGet();
+			owner.inbox.add(new Message(state, parent, action, gscore));
+		}
+
+		private synchronized void offerGoal(Node node) {
+			goals.add(node);
+			if (node.gscore < bestCost) {
+				bestCost = node.gscore;
+			}
+		}
+
+		/**
+		 * Accounts for the expansion of a node and returns false if the budget
+		 * has been exhausted.
+		 */
+		private boolean consume() {
+			SearchBudget.Resource resource;
+			synchronized (meter) {
+				resource = meter.exhausted(expanded.incrementAndGet(), stored.get());
+			}
+			if (resource != null) {
+				exhausted.compareAndSet(null, resource);
+				stopped = true;
+				return false;
+			}
+			return true;
+		}
+
+		private Node lookup(StateType state) {
+			return ownerOf(state).nodes.get(state);
+		}
+
+		/**
+		 * Returns a plan to a goal of minimal cost, following the first enabled
+		 * action that stays on an optimal path in every step. Should only be called
+		 * after the workers have terminated.
+		 */
+		public Trace<StateType, ActionType> extractPlan(StateType input) {
+			// Collect the nodes that lie on optimal paths, going backwards from the
+			// optimal goals through the parents on shortest paths.
+			Set<Node> optimalGoals = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (Node goal : goals) {
+				if (goal.gscore == bestCost) {
+					optimalGoals.add(goal);
+				}
+			}
+			Set<Node> onOptimalPath = Collections.newSetFromMap(new IdentityHashMap<>());
+			Deque<Node> frontier = new ArrayDeque<>(optimalGoals);
+			while (!frontier.isEmpty()) {
+				Node node = frontier.pop();
+				if (!onOptimalPath.add(node)) {
+					continue;
+				}
+				for (Parent parent : node.parents) {
+					float cost = tr.transitionCost(parent.node.state, parent.action, node.state);
+					if (parent.node.gscore + cost == node.gscore) {
+						frontier.push(parent.node);
+					}
+				}
+			}
+
+			Trace<StateType, ActionType> result = new ArrayListTrace<>(input);
+			Node current = lookup(input);
+			while (!optimalGoals.contains(current)) {
+				Node next = null;
+				ActionType nextAction = null;
+				for (Transition<StateType, ActionType> transition : goalTR.successors(current.state)) {
+					Node nextNode = lookup(transition.state);
+					if (nextNode != null && onOptimalPath.contains(nextNode)
+							&& current.gscore + transition.cost == nextNode.gscore) {
+						next = nextNode;
+						nextAction = transition.action;
+						break;
+					}
+				}
+				assert next != null : "Optimal path is broken!";
+				result.append(nextAction, next.state);
+				current = next;
+			}
+			return result;
+		}
+
+		/**
+		 * A worker thread, which owns the states mapped to it.
+		 *
+		 * @author romanm
+		 */
+		private class Worker implements Runnable {
+			private final ConcurrentLinkedQueue<Message> inbox = new ConcurrentLinkedQueue<>();
+			private final Map<StateType, Node> nodes = new HashMap<>();
+			private final IndexedHeap<Node> open = new IndexedHeap<>();
+			private boolean busy = false;
+
+			@Override
+			public void run() {
+				try {
+					while (!stopped) {
+						Message message;
+						while ((message = inbox.poll()) != null) {
+							if (!busy) {
+								busy = true;
+								work.incrementAndGet();
+							}
+							receive(message.state, message.parent, message.action, message.gscore);
+							work.decrementAndGet();
+						}
+
+						Node node = nextNode();
+						if (node != null) {
+							expand(node);
+						} else {
+							if (busy) {
+								busy = false;
+								work.decrementAndGet();
+							}
+							if (work.get() == 0) {
+								stopped = true;
+							} else {
+								LockSupport.parkNanos(IDLE_PARK_NANOS);
+							}
+						}
+					}
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+					stopped = true;
+				}
+			}
+
+			/**
+			 * Records a path of the given cost to the given state.
+			 */
+			private void receive(StateType state, Node parent, ActionType action, float gscore) {
+				Node node = nodes.get(state);
+				if (node == null) {
+					node = new Node(state);
+					node.hscore = estimateDistToGoal(state, target);
+					nodes.put(state, node);
+					stored.incrementAndGet();
+				}
+				if (gscore < node.gscore) {
+					node.gscore = gscore;
+					node.fscore = gscore + node.hscore;
+					node.parents.clear();
+					if (node.fscore <= bestCost || open.contains(node)) {
+						open.put(node, node.fscore, node.hscore);
+					}
+				} else if (gscore > node.gscore) {
+					return;
+				}
+				if (parent != null) {
+					node.parents.add(new Parent(parent, action));
+				}
+			}
+
+			/**
+			 * Returns the next node that should be expanded or null if there is none.
+			 * Since the open list is ordered by f-scores, once the first node cannot
+			 * lead to goals cheaper than the best one found so far, neither can the
+			 * others.
+			 */
+			private Node nextNode() {
+				if (open.isEmpty()) {
+					return null;
+				} else if (open.peekKey() > bestCost) {
+					open.clear();
+					return null;
+				} else {
+					return open.pop();
+				}
+			}
+
+			private void expand(Node node) {
+				if (goalTest.test(node.state)) {
+					offerGoal(node);
+					return;
+				}
+				if (!consume()) {
+					return;
+				}
+				for (Transition<StateType, ActionType> transition : goalTR.successors(node.state)) {
+					float gscore = node.gscore + transition.cost;
+					Worker owner = ownerOf(transition.state);
+					if (owner == this) {
+						receive(transition.state, node, transition.action, gscore);
+					} else {
+						send(transition.state, node, transition.action, gscore);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a lower bound on the cost of reaching the goal from the given state.
+	 *
+	 * @param target
+	 *            The target state of the goal or null if the goal is not given by
+	 *            a target state.
+	 */
+	protected float estimateDistToGoal(StateType state, StateType target) {
+		if (heuristic != null && target != null) {
+			return heuristic.estimate(state, target);
+		} else {
+			return tr.estimateDistToGoal(state);
+		}
+	}
+
+	/**
+	 * A successor sent to the worker that owns it.
+	 */
+	private class Message {
+		public final StateType state;
+		public final Node parent;
+		public final ActionType action;
+		public final float gscore;
+
+		public Message(StateType state, Node parent, ActionType action, float gscore) {
+			this.state = state;
+			this.parent = parent;
+			this.action = action;
+			this.gscore = gscore;
+		}
+	}
+
+	/**
+	 * A node in the search graph, which is only accessed by the worker that owns
+	 * it, until the search terminates.
+	 */
+	private class Node extends IndexedHeap.Element {
+		public final StateType state;
+
+		/**
+		 * The predecessors on the cheapest paths found so far.
+		 */
+		public final List<Parent> parents = new ArrayList<>(1);
+
+		public float gscore = Float.POSITIVE_INFINITY;
+		public float hscore;
+		public float fscore = Float.POSITIVE_INFINITY;
+
+		public Node(StateType state) {
+			this.state = state;
+		}
+	}
+
+	/**
+	 * A predecessor of a node and the action leading from it.
+	 */
+	private class Parent {
+		public final Node node;
+		public final ActionType action;
+
+		public Parent(Node node, ActionType action) {
+			this.node = node;
+			this.action = action;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package pexyn.planning;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+
+/**
+ * A directory of plans, each stored as a sequence of action indices in a file
+ * named by its key. When the number of plans exceeds the given bound, the least
+ * recently used ones are deleted, by the modification times of their files,
+ * which are updated on every use.
+ *
+ * @author romanm
+ */
+public class PlanCache {
+	private static final String SUFFIX = ".plan";
+
+	/**
+	 * Identifies the format of plan files, which is changed whenever the format
+	 * changes.
+	 */
+	private static final int MAGIC = 0x504C4E31;
+
+	protected final File directory;
+
+	protected final int maxEntries;
+
+	/**
+	 * Constructs a cache over the given directory, which is created if necessary.
+	 *
+	 * @param maxEntries
+	 *            The maximal number of plans kept in the directory.
+	 */
+	public PlanCache(File directory, int maxEntries) {
+		assert maxEntries > 0;
+		this.directory = directory;
+		this.maxEntries = maxEntries;
+		directory.mkdirs();
+	}
+
+	/**
+	 * Returns the action indices of the plan with the given key, if there is one.
+	 */
+	public Optional<int[]> get(String key) {
+		File file = fileOf(key);
+		if (!file.exists()) {
+			return Optional.empty();
+		}
+		try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Unexpected plan format!");
+			}
+			int[] result = new int[readVarInt(in)];
+			for (int i = 0; i < result.length; ++i) {
+				result[i] = readVarInt(in);
+			}
+			file.setLastModified(System.currentTimeMillis());
+			return Optional.of(result);
+		} catch (IOException e) {
+			file.delete();
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Stores the given action indices under the given key.
+	 */
+	public void put(String key, int[] plan) throws IOException {
+		File file = fileOf(key);
+		// Write to a temporary file first, so that readers never see partial
+		// plans.
+		File tmpFile = File.createTempFile(key, ".tmp", directory);
+		try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(MAGIC);
+			writeVarInt(out, plan.length);
+			for (int index : plan) {
+				writeVarInt(out, index);
+			}
+		}
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new IOException("Unable to write " + file.getPath() + "!");
+		}
+		evict();
+	}
+
+	/**
+	 * Removes the plan with the given key, if there is one.
+	 */
+	public void remove(String key) {
+		fileOf(key).delete();
+	}
+
+	private File fileOf(String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	/**
+	 * Deletes the least recently used plans in excess of the bound.
+	 */
+	private void evict() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files == null || files.length <= maxEntries) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length - maxEntries; ++i) {
+			files[i].delete();
+		}
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		assert value >= 0;
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed integer!");
+	}
+}
@@ -0,0 +1,32 @@
+package pexyn.planning;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Encodes planning problems and plans for storing them outside of the process
+ * (see {@link CachingPlanner}).
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ * @param <ActionType>
+ *            The type of actions in the transition relation.
+ */
+public interface PlanCodec<StateType, ActionType> {
+	/**
+	 * Returns the actions of the transition relation in a fixed order. Plans are
+	 * stored as indices into this list.
+	 */
+	public List<ActionType> actions();
+
+	/**
+	 * Writes a canonical encoding of the problem of reaching the target state
+	 * from the start state. Problems that differ only in the names of entities
+	 * that the actions do not refer to (e.g., heap addresses) should have equal
+	 * encodings.
+	 */
+	public void writeProblem(StateType start, StateType target, DataOutputStream out) throws IOException;
+}
@@ -1,5 +1,6 @@
 package pexyn.planning;
 
+import java.util.Optional;
 import java.util.function.Predicate;
 
 import pexyn.ArrayListTrace;
@@ -34,6 +35,14 @@ public interface Planner<StateType, ActionType> extends Searcher<StateType, Acti
 	public SearchResultType findPlan(StateType input, Predicate<StateType> goalTest,
 			Trace<StateType, ActionType> addToPlan);
 
+	/**
+	 * Returns the resource that was exhausted by the last search, if it ended with
+	 * {@link SearchResultType#OUT_OF_RESOURCES}, and empty otherwise.
+	 */
+	public default Optional<SearchBudget.Resource> exhaustedResource() {
+		return Optional.empty();
+	}
+
 	@Override
 	public default SearchResult<StateType> findState(StateType input, Predicate<StateType> goalTest) {
 		Trace<StateType, ActionType> plan = new ArrayListTrace<>(input);
@@ -0,0 +1,148 @@
+package pexyn.planning;
+
+import org.apache.commons.configuration2.Configuration;
+
+/**
+ * Bounds on the resources that a single search may consume. A non-positive
+ * bound means that the respective resource is unbounded.
+ *
+ * @author romanm
+ */
+public class SearchBudget {
+	/**
+	 * A budget that never runs out.
+	 */
+	public static final SearchBudget UNBOUNDED = new SearchBudget(-1, -1, -1, -1);
+
+	/**
+	 * The resources that are accounted for by a budget.
+	 */
+	public static enum Resource {
+		EXPANDED_NODES, STORED_STATES, TIME, MEMORY
+	}
+
+	/**
+	 * The number of expansions between consecutive checks of the clock and the
+	 * heap usage, which are too costly to perform on every expansion.
+	 */
+	private static final int CHECK_INTERVAL = 256;
+
+	/**
+	 * The maximal number of heap checks between consecutive garbage collections
+	 * forced by a search.
+	 */
+	private static final int MAX_COLLECTION_BACKOFF = 64;
+
+	/**
+	 * The maximal number of nodes that may be expanded.
+	 */
+	public final long maxExpandedNodes;
+
+	/**
+	 * The maximal number of states that may be stored by the search.
+	 */
+	public final long maxStoredStates;
+
+	/**
+	 * The maximal wall-clock time, in milliseconds, of a single search.
+	 */
+	public final long timeoutMillis;
+
+	/**
+	 * The maximal fraction of the maximal heap size that may be in use.
+	 */
+	public final float heapWatermark;
+
+	public SearchBudget(long maxExpandedNodes, long maxStoredStates, long timeoutMillis, float heapWatermark) {
+		this.maxExpandedNodes = maxExpandedNodes;
+		this.maxStoredStates = maxStoredStates;
+		this.timeoutMillis = timeoutMillis;
+		this.heapWatermark = heapWatermark;
+	}
+
+	/**
+	 * Reads the bounds from the 'pexyn.planning.*' properties of the given
+	 * configuration.
+	 */
+	public static SearchBudget fromConfig(Configuration config) {
+		return new SearchBudget(config.getLong("pexyn.planning.maxExpandedNodes", -1),
+				config.getLong("pexyn.planning.maxStoredStates", -1),
+				config.getLong("pexyn.planning.timeoutSeconds", -1) * 1000,
+				config.getFloat("pexyn.planning.heapWatermark", -1));
+	}
+
+	/**
+	 * Starts accounting for a new search.
+	 */
+	public Meter start() {
+		return new Meter();
+	}
+
+	/**
+	 * Tracks the resources consumed by a single search.
+	 *
+	 * @author romanm
+	 */
+	public class Meter {
+		private final long deadline;
+		private int checkCountdown = CHECK_INTERVAL;
+
+		/**
+		 * The number of heap checks to skip after a forced garbage collection that
+		 * brought the heap below the watermark, which doubles after each such
+		 * collection, so that a search whose live data stays near the watermark
+		 * does not collect over and over.
+		 */
+		private int collectionBackoff = 0;
+
+		/**
+		 * The number of heap checks that remain to be skipped.
+		 */
+		private int skippedChecks = 0;
+
+		private Meter() {
+			deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+		}
+
+		/**
+		 * Returns the resource that has been exhausted, given the number of nodes
+		 * expanded and states stored so far, or null if the search may proceed.
+		 */
+		public Resource exhausted(long expandedNodes, long storedStates) {
+			if (maxExpandedNodes > 0 && expandedNodes > maxExpandedNodes) {
+				return Resource.EXPANDED_NODES;
+			}
+			if (maxStoredStates > 0 && storedStates > maxStoredStates) {
+				return Resource.STORED_STATES;
+			}
+			if (--checkCountdown > 0) {
+				return null;
+			}
+			checkCountdown = CHECK_INTERVAL;
+			if (System.currentTimeMillis() > deadline) {
+				return Resource.TIME;
+			}
+			if (heapWatermark > 0 && aboveHeapWatermark()) {
+				if (skippedChecks > 0) {
+					--skippedChecks;
+					return null;
+				}
+				// Part of the used memory may be garbage, so we collect it before
+				// giving up.
+				System.gc();
+				if (aboveHeapWatermark()) {
+					return Resource.MEMORY;
+				}
+				collectionBackoff = Math.min(MAX_COLLECTION_BACKOFF, Math.max(1, 2 * collectionBackoff));
+				skippedChecks = collectionBackoff;
+			}
+			return null;
+		}
+
+		private boolean aboveHeapWatermark() {
+			Runtime runtime = Runtime.getRuntime();
+			long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+			return usedMemory > heapWatermark * runtime.maxMemory();
+		}
+	}
+}
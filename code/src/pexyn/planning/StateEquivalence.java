@@ -0,0 +1,28 @@
+package pexyn.planning;
+
+/**
+ * Maps states to keys, such that states with equal keys are interchangeable
+ * for the purpose of reaching a goal, e.g., states that are equal up to a
+ * renaming of their elements. A search that identifies states by their keys
+ * explores each equivalence class once.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ */
+@FunctionalInterface
+public interface StateEquivalence<StateType> {
+	/**
+	 * Returns the key of the given state. Equal keys must imply that the same
+	 * actions are enabled in both states, that their successors have equal keys,
+	 * and that both states satisfy the goal or neither does.
+	 *
+	 * @param state
+	 *            A state.
+	 * @param target
+	 *            The target state of a {@link Goal}, or null if the goal is not
+	 *            given by a target state.
+	 */
+	public Object key(StateType state, StateType target);
+}
@@ -1,7 +1,9 @@
 package pexyn.planning;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * A non-deterministic transition relation with a positive weight associated
@@ -44,6 +46,35 @@ public interface TR<StateType, ActionType> {
 	 */
 	public Collection<StateType> apply(StateType state, ActionType action);
 
+	/**
+	 * Returns the transition relation used to search for states that agree with
+	 * the given target state, e.g., the states of a {@link Goal}. It may omit
+	 * actions that do not help to reach the target, as long as it keeps a path
+	 * that is at most as costly as the cheapest path to each state agreeing with
+	 * the target. The default implementation returns this relation.
+	 */
+	public default TR<StateType, ActionType> forGoal(StateType target) {
+		return this;
+	}
+
+	/**
+	 * Returns the transitions from the given state, with the transitions of each
+	 * action listed consecutively and the actions ordered as by
+	 * {@link #enabledActions(Object)}.<br>
+	 * The default implementation applies each enabled action. Transition
+	 * relations that find out whether an action is enabled by applying it should
+	 * override it, to compute each successor once.
+	 */
+	public default List<Transition<StateType, ActionType>> successors(StateType state) {
+		List<Transition<StateType, ActionType>> result = new ArrayList<>();
+		for (ActionType action : enabledActions(state)) {
+			for (StateType nextState : apply(state, action)) {
+				result.add(new Transition<>(action, nextState, transitionCost(state, action, nextState)));
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Returns the maximal cost of taking a transition from the source state to any
 	 * destination state with the given action.
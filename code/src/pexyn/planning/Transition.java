@@ -0,0 +1,29 @@
+package pexyn.planning;
+
+/**
+ * A transition of a transition relation: an action, the state it leads to, and
+ * the cost of taking it.
+ *
+ * @author romanm
+ *
+ * @param <StateType>
+ *            The type of states in the state space.
+ * @param <ActionType>
+ *            The type of actions in the transition relation.
+ */
+public class Transition<StateType, ActionType> {
+	public final ActionType action;
+	public final StateType state;
+	public final float cost;
+
+	public Transition(ActionType action, StateType state, float cost) {
+		this.action = action;
+		this.state = state;
+		this.cost = cost;
+	}
+
+	@Override
+	public String toString() {
+		return "-" + action + "-> " + state;
+	}
+}